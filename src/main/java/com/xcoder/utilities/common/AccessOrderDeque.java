@@ -0,0 +1,68 @@
+package com.xcoder.utilities.common;
+
+/**
+ * MapCache.Node 访问顺序双向链表，头部最久未访问
+ * 非线程安全，由MapCache的eviction lock保护
+ *
+ * @author chuck lee
+ */
+final class AccessOrderDeque {
+
+    /**
+     * 哨兵节点
+     */
+    private final MapCache.Node<?, ?> sentinel = new MapCache.Node<>();
+
+    /**
+     * 链表内节点权重和
+     */
+    private long weight;
+
+    AccessOrderDeque() {
+        this.sentinel.accessPrev = this.sentinel;
+        this.sentinel.accessNext = this.sentinel;
+    }
+
+    boolean isEmpty() {
+        return this.sentinel == this.sentinel.accessNext;
+    }
+
+    long weight() {
+        return this.weight;
+    }
+
+    MapCache.Node<?, ?> peekFirst() {
+        return this.isEmpty() ? null : this.sentinel.accessNext;
+    }
+
+    MapCache.Node<?, ?> peekLast() {
+        return this.isEmpty() ? null : this.sentinel.accessPrev;
+    }
+
+    void linkLast(final MapCache.Node<?, ?> node) {
+        node.accessPrev = this.sentinel.accessPrev;
+        node.accessNext = this.sentinel;
+        this.sentinel.accessPrev.accessNext = node;
+        this.sentinel.accessPrev = node;
+        this.weight += node.weight;
+    }
+
+    void unlink(final MapCache.Node<?, ?> node) {
+        node.accessPrev.accessNext = node.accessNext;
+        node.accessNext.accessPrev = node.accessPrev;
+        node.accessPrev = null;
+        node.accessNext = null;
+        this.weight -= node.weight;
+    }
+
+    void moveToBack(final MapCache.Node<?, ?> node) {
+        this.unlink(node);
+        this.linkLast(node);
+    }
+
+    void clear() {
+        for (MapCache.Node<?, ?> node = this.peekFirst(); null != node; node = this.peekFirst()) {
+            this.unlink(node);
+        }
+    }
+}
@@ -0,0 +1,136 @@
+package com.xcoder.utilities.common;
+
+/**
+ * 4-bit Count-Min sketch, TinyLFU 访问频率估算
+ * 非线程安全，由MapCache的eviction lock保护；表从小开始，随缓存的条目数增长，不按权重分配
+ *
+ * @author chuck lee
+ */
+final class FrequencySketch {
+
+    /**
+     * 每个long 16个4-bit计数器
+     */
+    private static final long RESET_MASK = 0x7777777777777777L;
+
+    /**
+     * 4-bit计数器最大值
+     */
+    private static final int MAX_COUNT = 15;
+
+    /**
+     * 4组hash种子
+     */
+    private static final long[] SEEDS = {
+            0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL, 0xcbf29ce484222325L};
+
+    /**
+     * 表的最大长度
+     */
+    private static final int MAXIMUM_LENGTH = 1 << 30;
+
+    private long[] table;
+
+    private int tableMask;
+
+    /**
+     * 样本数，达到后所有计数器减半(aging)
+     */
+    private int sampleSize;
+
+    private int additions;
+
+    FrequencySketch(final long initialSize) {
+        this.allocate(initialSize);
+    }
+
+    /**
+     * 条目数超过表长度时扩容，扩容后频率从0重新累计
+     *
+     * @param size 当前条目数
+     */
+    void ensureCapacity(final long size) {
+        if (size > this.table.length && MAXIMUM_LENGTH > this.table.length) {
+            this.allocate(size);
+        }
+    }
+
+    private void allocate(final long size) {
+        final int capacity = (int) Math.min(Math.max(size, 16L), MAXIMUM_LENGTH);
+        final int length = Integer.highestOneBit(capacity - 1) << 1;
+        this.table = new long[length];
+        this.tableMask = length - 1;
+        this.sampleSize = (int) Math.min(10L * length, Integer.MAX_VALUE);
+        this.additions = 0;
+    }
+
+    /**
+     * 频率估算，取4个计数器最小值
+     *
+     * @param hashCode hashCode
+     * @return 0 - 15
+     */
+    int frequency(final int hashCode) {
+        final int hash = spread(hashCode);
+        final int start = (hash & 3) << 2;
+        int frequency = MAX_COUNT;
+        for (int i = 0; i < SEEDS.length; i++) {
+            final int index = this.indexOf(hash, i);
+            final int count = (int) ((this.table[index] >>> ((start + i) << 2)) & 0xfL);
+            frequency = Math.min(frequency, count);
+        }
+        return frequency;
+    }
+
+    /**
+     * 频率+1
+     *
+     * @param hashCode hashCode
+     */
+    void increment(final int hashCode) {
+        final int hash = spread(hashCode);
+        final int start = (hash & 3) << 2;
+        boolean added = false;
+        for (int i = 0; i < SEEDS.length; i++) {
+            added |= this.incrementAt(this.indexOf(hash, i), start + i);
+        }
+        if (added && ++this.additions == this.sampleSize) {
+            this.reset();
+        }
+    }
+
+    private boolean incrementAt(final int index, final int counter) {
+        final int offset = counter << 2;
+        final long mask = 0xfL << offset;
+        if ((this.table[index] & mask) != mask) {
+            this.table[index] += 1L << offset;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * 所有计数器减半，使旧的热点逐渐冷却
+     */
+    private void reset() {
+        int odd = 0;
+        for (int i = 0; i < this.table.length; i++) {
+            odd += Long.bitCount(this.table[i] & 0x1111111111111111L);
+            this.table[i] = (this.table[i] >>> 1) & RESET_MASK;
+        }
+        this.additions = (this.additions >>> 1) - (odd >>> 2);
+    }
+
+    private int indexOf(final int hash, final int i) {
+        long h = (hash + SEEDS[i]) * SEEDS[i];
+        h += h >>> 32;
+        return ((int) h) & this.tableMask;
+    }
+
+    private static int spread(final int hashCode) {
+        int x = hashCode;
+        x = ((x >>> 16) ^ x) * 0x45d9f3b;
+        x = ((x >>> 16) ^ x) * 0x45d9f3b;
+        return (x >>> 16) ^ x;
+    }
+}
@@ -2,6 +2,7 @@ package com.xcoder.utilities.common;
 
 import com.alibaba.fastjson.JSON;
 import com.xcoder.utilities.IUniversal;
+import com.xcoder.utilities.io.Transfer;
 
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
@@ -75,10 +76,7 @@ public class GzipUtensil implements IUniversal {
             bis = new ByteArrayInputStream(bytes);
             gis = new GZIPInputStream(bis, size);
             bos = new ByteArrayOutputStream();
-            final byte[] buffer = new byte[size];
-            for (int r = gis.read(buffer); -1 != r; r = gis.read(buffer)) {
-                bos.write(buffer, 0, r);
-            }
+            Transfer.pump(gis, bos);
         } finally {
             if (null != bos) {
                 bos.flush();
@@ -0,0 +1,231 @@
+package com.xcoder.utilities.common;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Space-Saving 热点key统计
+ * 最多跟踪capacity个key，新key替换计数最小者并继承其计数(误差上界)，
+ * 出现次数超过 总数/capacity 的key一定在表中；记录时只tryLock，竞争时丢弃本次记录
+ * <p>
+ * Stream-Summary 结构：计数相同的key挂在同一个桶上，桶按计数升序双向链接，
+ * 取最小计数、计数加一都是O(1)，不再逐个扫描
+ *
+ * @author chuck lee
+ */
+final class HotKeySketch {
+
+    private final HashMap<Object, Counter> counters;
+
+    private final int capacity;
+
+    private final ReentrantLock lock = new ReentrantLock();
+
+    /**
+     * 计数最小的桶
+     */
+    private Bucket min;
+
+    /**
+     * 计数最大的桶
+     */
+    private Bucket max;
+
+    HotKeySketch(final int capacity) {
+        this.capacity = Math.max(1, capacity);
+        this.counters = new HashMap<>(this.capacity * 2);
+    }
+
+    /**
+     * 记录一次访问，有损
+     *
+     * @param key key
+     */
+    void record(final Object key) {
+        if (!this.lock.tryLock()) {
+            return;
+        }
+        try {
+            Counter counter = this.counters.get(key);
+            if (null == counter) {
+                if (this.capacity > this.counters.size()) {
+                    counter = new Counter(key);
+                    this.counters.put(key, counter);
+                    this.attach(counter, this.bucketAfter(null, 1L));
+                    return;
+                }
+                // 替换计数最小者，继承其计数作为误差
+                counter = this.min.head;
+                this.counters.remove(counter.key);
+                counter.key = key;
+                counter.error = counter.bucket.count;
+                this.counters.put(key, counter);
+            }
+            this.increment(counter);
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * 计数最高的k个key，按计数降序
+     *
+     * @param k k
+     * @return key -&gt; 估计访问次数(可能偏大，偏差不超过继承的误差)
+     */
+    Map<Object, Long> top(final int k) {
+        return this.top(k, null);
+    }
+
+    /**
+     * 计数最高的k个key，按计数降序，同时给出每个key的误差上界
+     *
+     * @param k      k
+     * @param errors 输出 key -&gt; 误差上界，真实次数在 [count - error, count]，可以为null
+     * @return key -&gt; 估计访问次数
+     */
+    Map<Object, Long> top(final int k, final Map<Object, Long> errors) {
+        final Map<Object, Long> top = new LinkedHashMap<>();
+        this.lock.lock();
+        try {
+            for (Bucket bucket = this.max; null != bucket && top.size() < k; bucket = bucket.prev) {
+                for (Counter counter = bucket.head; null != counter && top.size() < k; counter = counter.next) {
+                    top.put(counter.key, bucket.count);
+                    if (null != errors) {
+                        errors.put(counter.key, counter.error);
+                    }
+                }
+            }
+        } finally {
+            this.lock.unlock();
+        }
+        return top;
+    }
+
+    void reset() {
+        this.lock.lock();
+        try {
+            this.counters.clear();
+            this.min = null;
+            this.max = null;
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * 计数加一，移到下一个桶
+     *
+     * @param counter counter
+     */
+    private void increment(final Counter counter) {
+        final Bucket next = this.bucketAfter(counter.bucket, counter.bucket.count + 1L);
+        this.detach(counter);
+        this.attach(counter, next);
+    }
+
+    /**
+     * 取bucket之后计数为count的桶，没有时在其后插入
+     *
+     * @param bucket bucket，null 表示链表头之前
+     * @param count  count
+     * @return Bucket
+     */
+    private Bucket bucketAfter(final Bucket bucket, final long count) {
+        final Bucket next = null == bucket ? this.min : bucket.next;
+        if (null != next && count == next.count) {
+            return next;
+        }
+        final Bucket created = new Bucket(count);
+        created.prev = bucket;
+        created.next = next;
+        if (null == bucket) {
+            this.min = created;
+        } else {
+            bucket.next = created;
+        }
+        if (null == next) {
+            this.max = created;
+        } else {
+            next.prev = created;
+        }
+        return created;
+    }
+
+    private void attach(final Counter counter, final Bucket bucket) {
+        counter.bucket = bucket;
+        counter.prev = null;
+        counter.next = bucket.head;
+        if (null != bucket.head) {
+            bucket.head.prev = counter;
+        }
+        bucket.head = counter;
+    }
+
+    /**
+     * 从所在桶摘除，桶空时移除桶
+     *
+     * @param counter counter
+     */
+    private void detach(final Counter counter) {
+        final Bucket bucket = counter.bucket;
+        if (null == counter.prev) {
+            bucket.head = counter.next;
+        } else {
+            counter.prev.next = counter.next;
+        }
+        if (null != counter.next) {
+            counter.next.prev = counter.prev;
+        }
+        counter.bucket = null;
+        counter.prev = null;
+        counter.next = null;
+        if (null != bucket.head) {
+            return;
+        }
+        if (null == bucket.prev) {
+            this.min = bucket.next;
+        } else {
+            bucket.prev.next = bucket.next;
+        }
+        if (null == bucket.next) {
+            this.max = bucket.prev;
+        } else {
+            bucket.next.prev = bucket.prev;
+        }
+    }
+
+    /**
+     * 计数相同的key
+     */
+    private static final class Bucket {
+        private final long count;
+        private Counter head;
+        private Bucket prev;
+        private Bucket next;
+
+        private Bucket(long count) {
+            this.count = count;
+        }
+    }
+
+    /**
+     * 被跟踪的key
+     */
+    private static final class Counter {
+        private Object key;
+        /**
+         * 继承的误差
+         */
+        private long error;
+        private Bucket bucket;
+        private Counter prev;
+        private Counter next;
+
+        private Counter(Object key) {
+            this.key = key;
+        }
+    }
+}
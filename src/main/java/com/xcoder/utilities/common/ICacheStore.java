@@ -0,0 +1,28 @@
+package com.xcoder.utilities.common;
+
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * MapCache 后端存储
+ *
+ * @author chuck lee
+ */
+public interface ICacheStore<K, V> {
+
+    /**
+     * 批量写入
+     *
+     * @param entries entries
+     * @throws Exception Exception
+     */
+    void writeAll(Map<K, V> entries) throws Exception;
+
+    /**
+     * 批量删除
+     *
+     * @param keys keys
+     * @throws Exception Exception
+     */
+    void deleteAll(Collection<K> keys) throws Exception;
+}
@@ -0,0 +1,394 @@
+package com.xcoder.utilities.common;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * long key map cache
+ * key/过期时间存放在原始类型数组中，无Node包装、无装箱，适合百万级小对象(如byte[])缓存
+ * 分段开放寻址(线性探测)，读走StampedLock乐观读；过期为读时惰性淘汰 + run()周期清扫
+ *
+ * @author chuck lee
+ */
+public class LongMapCache<V> implements Runnable {
+
+    /**
+     * 每段初始容量
+     */
+    private static final int DEFAULT_SEGMENT_CAPACITY = 16;
+
+    /**
+     * 负载因子 3/4
+     */
+    private static final int LOAD_FACTOR_NUMERATOR = 3;
+
+    private static final int LOAD_FACTOR_DENOMINATOR = 4;
+
+    /**
+     * 周期清扫间隔
+     */
+    public static final Long DEFAULT_SWEEP_TIME = 1000L;
+
+    private final Segment[] segments;
+
+    private final int segmentMask;
+
+    private final long sweepTime;
+
+    public LongMapCache() {
+        this(Runtime.getRuntime().availableProcessors() * 4, DEFAULT_SWEEP_TIME);
+    }
+
+    /**
+     * Constructor
+     *
+     * @param concurrencyLevel 分段数，取不小于它的2的幂
+     * @param sweepTime        周期清扫间隔
+     */
+    public LongMapCache(int concurrencyLevel, long sweepTime) {
+        final int size = Integer.highestOneBit(Math.max(1, concurrencyLevel - 1)) << 1;
+        this.segments = new Segment[size];
+        for (int i = 0; i < size; i++) {
+            this.segments[i] = new Segment();
+        }
+        this.segmentMask = size - 1;
+        this.sweepTime = sweepTime;
+    }
+
+    /**
+     * 取值
+     *
+     * @param key key
+     * @return value, 不存在或已过期返回null
+     */
+    @SuppressWarnings("unchecked")
+    public V get(final long key) {
+        final long hash = hash(key);
+        return (V) this.segmentFor(hash).get(key, hash, System.currentTimeMillis());
+    }
+
+    /**
+     * 放入值
+     *
+     * @param key    key
+     * @param value  value
+     * @param expire 存活毫秒数
+     * @return 旧值
+     */
+    @SuppressWarnings("unchecked")
+    public V put(final long key, final V value, final long expire) {
+        MixedUtensil.objectNullPointerException(value);
+        final long hash = hash(key);
+        final long now = System.currentTimeMillis();
+        return (V) this.segmentFor(hash).put(key, hash, value, now + expire, now);
+    }
+
+    /**
+     * 移除
+     *
+     * @param key key
+     * @return 旧值
+     */
+    @SuppressWarnings("unchecked")
+    public V remove(final long key) {
+        final long hash = hash(key);
+        return (V) this.segmentFor(hash).remove(key, hash, System.currentTimeMillis());
+    }
+
+    public boolean containsKey(final long key) {
+        return null != this.get(key);
+    }
+
+    /**
+     * 含未清扫的过期项
+     *
+     * @return size
+     */
+    public int size() {
+        int size = 0;
+        for (Segment segment : this.segments) {
+            size += segment.size;
+        }
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return 0 == this.size();
+    }
+
+    public void clear() {
+        for (Segment segment : this.segments) {
+            segment.clear();
+        }
+    }
+
+    /**
+     * 清理过期项
+     *
+     * @return 清理数量
+     */
+    public int purge() {
+        final long now = System.currentTimeMillis();
+        int count = 0;
+        for (Segment segment : this.segments) {
+            count += segment.purge(now);
+        }
+        return count;
+    }
+
+    /**
+     * 清理线程，逐段清扫过期项
+     */
+    @Override
+    public final void run() {
+        for (; !Thread.currentThread().isInterrupted(); ) {
+            this.purge();
+            try {
+                TimeUnit.MILLISECONDS.sleep(this.sweepTime);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private Segment segmentFor(final long hash) {
+        return this.segments[(int) (hash >>> 32) & this.segmentMask];
+    }
+
+    /**
+     * murmur3 fmix64
+     *
+     * @param key key
+     * @return hash
+     */
+    private static long hash(final long key) {
+        long h = key;
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    /**
+     * 开放寻址段，values[i] == null 表示空槽
+     */
+    private static final class Segment {
+
+        private final StampedLock lock = new StampedLock();
+
+        private long[] keys = new long[DEFAULT_SEGMENT_CAPACITY];
+
+        private long[] expireTimes = new long[DEFAULT_SEGMENT_CAPACITY];
+
+        private Object[] values = new Object[DEFAULT_SEGMENT_CAPACITY];
+
+        private volatile int size;
+
+        Object get(final long key, final long hash, final long now) {
+            long stamp = this.lock.tryOptimisticRead();
+            Object value = null;
+            long expireTime = 0L;
+            if (0L != stamp) {
+                final long[] keys = this.keys;
+                final long[] expireTimes = this.expireTimes;
+                final Object[] values = this.values;
+                final int index = indexOf(keys, values, key, hash);
+                if (0 <= index && index < expireTimes.length) {
+                    value = values[index];
+                    expireTime = expireTimes[index];
+                }
+            }
+            if (0L == stamp || !this.lock.validate(stamp)) {
+                stamp = this.lock.readLock();
+                try {
+                    final int index = indexOf(this.keys, this.values, key, hash);
+                    value = 0 > index ? null : this.values[index];
+                    expireTime = 0 > index ? 0L : this.expireTimes[index];
+                } finally {
+                    this.lock.unlockRead(stamp);
+                }
+            }
+            if (null == value) {
+                return null;
+            }
+            if (now > expireTime) {
+                this.removeExpired(key, hash, now);
+                return null;
+            }
+            return value;
+        }
+
+        /**
+         * 惰性过期删除：在写锁内重新读取，仍过期才删除，避免删掉乐观读之后put的新值
+         *
+         * @param key  key
+         * @param hash hash
+         * @param now  now
+         */
+        private void removeExpired(final long key, final long hash, final long now) {
+            final long stamp = this.lock.writeLock();
+            try {
+                final int index = indexOf(this.keys, this.values, key, hash);
+                if (0 <= index && now > this.expireTimes[index]) {
+                    this.delete(index);
+                }
+            } finally {
+                this.lock.unlockWrite(stamp);
+            }
+        }
+
+        Object put(final long key, final long hash, final Object value, final long expireTime, final long now) {
+            final long stamp = this.lock.writeLock();
+            try {
+                int index = indexOf(this.keys, this.values, key, hash);
+                if (0 <= index) {
+                    final Object old = this.values[index];
+                    final boolean expired = now > this.expireTimes[index];
+                    this.values[index] = value;
+                    this.expireTimes[index] = expireTime;
+                    return expired ? null : old;
+                }
+                if ((this.size + 1) * LOAD_FACTOR_DENOMINATOR > this.values.length * LOAD_FACTOR_NUMERATOR) {
+                    // 扩容前先清理过期项
+                    this.purgeLocked(now);
+                    if ((this.size + 1) * LOAD_FACTOR_DENOMINATOR > this.values.length * LOAD_FACTOR_NUMERATOR) {
+                        this.resize(this.values.length << 1);
+                    }
+                }
+                final int mask = this.values.length - 1;
+                index = (int) hash & mask;
+                while (null != this.values[index]) {
+                    index = (index + 1) & mask;
+                }
+                this.keys[index] = key;
+                this.expireTimes[index] = expireTime;
+                this.values[index] = value;
+                this.size++;
+                return null;
+            } finally {
+                this.lock.unlockWrite(stamp);
+            }
+        }
+
+        Object remove(final long key, final long hash, final long now) {
+            final long stamp = this.lock.writeLock();
+            try {
+                final int index = indexOf(this.keys, this.values, key, hash);
+                if (0 > index) {
+                    return null;
+                }
+                final Object old = this.values[index];
+                final boolean expired = now > this.expireTimes[index];
+                this.delete(index);
+                return expired ? null : old;
+            } finally {
+                this.lock.unlockWrite(stamp);
+            }
+        }
+
+        int purge(final long now) {
+            final long stamp = this.lock.writeLock();
+            try {
+                return this.purgeLocked(now);
+            } finally {
+                this.lock.unlockWrite(stamp);
+            }
+        }
+
+        void clear() {
+            final long stamp = this.lock.writeLock();
+            try {
+                this.keys = new long[DEFAULT_SEGMENT_CAPACITY];
+                this.expireTimes = new long[DEFAULT_SEGMENT_CAPACITY];
+                this.values = new Object[DEFAULT_SEGMENT_CAPACITY];
+                this.size = 0;
+            } finally {
+                this.lock.unlockWrite(stamp);
+            }
+        }
+
+        private int purgeLocked(final long now) {
+            int count = 0;
+            for (int i = 0; i < this.values.length; ) {
+                if (null != this.values[i] && now > this.expireTimes[i]) {
+                    // 后移删除会把后续项移到i，需重新检查i
+                    this.delete(i);
+                    count++;
+                } else {
+                    i++;
+                }
+            }
+            return count;
+        }
+
+        /**
+         * 线性探测后移删除，不留墓碑
+         *
+         * @param index index
+         */
+        private void delete(int index) {
+            final int mask = this.values.length - 1;
+            for (int next = (index + 1) & mask; null != this.values[next]; next = (next + 1) & mask) {
+                final int home = (int) hash(this.keys[next]) & mask;
+                // home 不在 (index, next] 区间内时可前移到index
+                final boolean movable = index <= next ? (home <= index || home > next) : (home <= index && home > next);
+                if (movable) {
+                    this.keys[index] = this.keys[next];
+                    this.expireTimes[index] = this.expireTimes[next];
+                    this.values[index] = this.values[next];
+                    index = next;
+                }
+            }
+            this.values[index] = null;
+            this.size--;
+        }
+
+        private void resize(final int capacity) {
+            final long[] oldKeys = this.keys;
+            final long[] oldExpireTimes = this.expireTimes;
+            final Object[] oldValues = this.values;
+            final long[] keys = new long[capacity];
+            final long[] expireTimes = new long[capacity];
+            final Object[] values = new Object[capacity];
+            final int mask = capacity - 1;
+            for (int i = 0; i < oldValues.length; i++) {
+                if (null == oldValues[i]) {
+                    continue;
+                }
+                int index = (int) hash(oldKeys[i]) & mask;
+                while (null != values[index]) {
+                    index = (index + 1) & mask;
+                }
+                keys[index] = oldKeys[i];
+                expireTimes[index] = oldExpireTimes[i];
+                values[index] = oldValues[i];
+            }
+            this.keys = keys;
+            this.expireTimes = expireTimes;
+            this.values = values;
+        }
+    }
+
+    /**
+     * 查找key所在槽位
+     *
+     * @return index, 不存在返回-1
+     */
+    private static int indexOf(final long[] keys, final Object[] values, final long key, final long hash) {
+        final int length = Math.min(keys.length, values.length);
+        final int mask = length - 1;
+        int index = (int) hash & mask;
+        // 乐观读时数组可能被并发修改，探测次数以容量为上限
+        for (int i = 0; i < length; i++, index = (index + 1) & mask) {
+            if (null == values[index]) {
+                return -1;
+            }
+            if (key == keys[index]) {
+                return index;
+            }
+        }
+        return -1;
+    }
+}
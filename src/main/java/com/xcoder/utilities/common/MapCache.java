@@ -1,16 +1,32 @@
 package com.xcoder.utilities.common;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.locks.Condition;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
 import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * Map cache
+ * maximumWeight &gt; 0 时为有界缓存，W-TinyLFU 准入/淘汰：
+ * 1% window LRU + segmented LRU(probation 20% / protected 80%)，
+ * window 淘汰出的候选与 probation 队头按访问频率决定去留
  *
  * @author chuck lee
  */
-public class MapCache extends ConcurrentHashMap<String, MapCache.Node> implements Runnable {
+public class MapCache<K, V> extends ConcurrentHashMap<K, MapCache.Node<K, V>> implements Runnable {
 
     /**
      * ConcurrentHashMap 扩容大小
@@ -18,69 +34,355 @@ public class MapCache extends ConcurrentHashMap<String, MapCache.Node> implement
     public static final Integer DEFAULT_INITIAL_CAPACITY = 256;
 
     /**
-     * 获取cas锁默认等待时间
+     * 让出线程时间片时间
      */
-    public static final Long DEFAULT_TRY_LOCK_TIME_OUT = 500L;
+    public static final Long DEFAULT_AWAIT_TIME = 60L * 1000L;
 
     /**
-     * 让出线程时间片时间
+     * 时间轮tick时间
      */
-    public static final Long DEFAULT_AWAIT_TIME = 60L * 1000L;
+    public static final Long DEFAULT_TICK_TIME = 100L;
+
+    /**
+     * 统计快照默认热点key数
+     */
+    public static final Integer DEFAULT_HOT_KEYS = 10;
+
+    private static final byte QUEUE_NONE = 0;
+
+    private static final byte QUEUE_WINDOW = 1;
+
+    private static final byte QUEUE_PROBATION = 2;
+
+    private static final byte QUEUE_PROTECTED = 3;
+
+    /**
+     * 清理线程运行中
+     */
+    private static final int CLEANER_RUNNING = 0;
 
     /**
-     * cas 锁
+     * 清理线程空闲park，等待put唤醒
      */
-    private final ReentrantLock lock = new ReentrantLock(true);
+    private static final int CLEANER_PARKED = 1;
 
     /**
-     * 线程对象监视器
+     * 清理线程状态，put只在PARKED时CAS并unpark，运行中只有一次volatile读
      */
-    private final Condition monitor = lock.newCondition();
+    private final AtomicInteger cleanerState = new AtomicInteger(CLEANER_RUNNING);
 
-    private volatile boolean monitorAwait = true;
+    /**
+     * 清理线程
+     */
+    private volatile Thread cleaner;
 
     /**
      * 同步代码块对象监视器
      */
     private final Object mutex;
 
+    /**
+     * 时间轮锁，保护timingWheel，写线程只tryLock
+     */
+    private final ReentrantLock evictionLock = new ReentrantLock();
+
+    /**
+     * 过期时间轮
+     */
+    private final TimingWheel timingWheel;
+
+    /**
+     * 待挂载/摘除的节点，按线程分段
+     */
+    private final WriteBuffer writeBuffer = new WriteBuffer();
+
+    /**
+     * 最大权重，&lt;= 0 不限制
+     */
+    private final long maximumWeight;
+
+    /**
+     * 权重计算，null时每个节点权重为1
+     */
+    private final Weigher<? super K, ? super V> weigher;
+
+    /**
+     * 访问频率，仅有界时创建
+     */
+    private final FrequencySketch sketch;
+
+    private final AccessOrderDeque windowDeque = new AccessOrderDeque();
+
+    private final AccessOrderDeque probationDeque = new AccessOrderDeque();
+
+    private final AccessOrderDeque protectedDeque = new AccessOrderDeque();
+
+    /**
+     * 命中记录
+     */
+    private final ReadBuffer readBuffer = new ReadBuffer();
+
+    /**
+     * 当前总权重，仅在evictionLock内修改
+     */
+    private volatile long weightedSize;
+
+    /**
+     * 队列中的条目数，仅在evictionLock内修改，用于按条目数扩容sketch
+     */
+    private long policySize;
+
+    private final LongAdder hitCount = new LongAdder();
+
+    private final LongAdder missCount = new LongAdder();
+
+    /**
+     * 按RemovalCause统计的移除数
+     */
+    private final LongAdder[] removalCounts = new LongAdder[RemovalCause.values().length];
+
+    private final LongAdder loadSuccessCount = new LongAdder();
+
+    private final LongAdder loadFailureCount = new LongAdder();
+
+    private final LongAdder totalLoadNanos = new LongAdder();
+
+    /**
+     * 清理线程统计，仅在evictionLock内修改
+     */
+    private volatile long cleanerRunCount;
+
+    private volatile long cleanerTotalNanos;
+
+    private volatile long cleanerMaxNanos;
+
+    /**
+     * 时间轮过期统计，延迟为到期时间点到实际移除的毫秒数，仅在evictionLock内修改
+     */
+    private volatile long expireCount;
+
+    private volatile long totalExpireLag;
+
+    private volatile long maxExpireLag;
+
+    /**
+     * 热点key统计，null 不统计
+     */
+    private volatile HotKeySketch hotKeys;
+
+    /**
+     * 节点移除回调
+     */
+    private final CopyOnWriteArrayList<RemovalListener<? super K, ? super V>> removalListeners = new CopyOnWriteArrayList<>();
+
+    /**
+     * 节点写入回调
+     */
+    private final CopyOnWriteArrayList<WriteListener<? super K, ? super V>> writeListeners = new CopyOnWriteArrayList<>();
+
+    /**
+     * 加载中的key，同一key并发未命中只加载一次
+     */
+    private final ConcurrentHashMap<K, LoadingFuture<V>> loading = new ConcurrentHashMap<>();
+
+    /**
+     * 提前刷新执行器
+     */
+    private volatile Executor executor = ForkJoinPool.commonPool();
+
+    /**
+     * 节点移除原因
+     */
+    public enum RemovalCause {
+        /**
+         * remove
+         */
+        EXPLICIT,
+        /**
+         * put 覆盖
+         */
+        REPLACED,
+        /**
+         * 过期
+         */
+        EXPIRED,
+        /**
+         * 容量淘汰
+         */
+        SIZE,
+        /**
+         * clear
+         */
+        CLEARED
+    }
+
+    /**
+     * Node removal listener
+     * 在移除该key的map锁内回调，同一key的写入/移除事件按其在map中发生的顺序回调；
+     * 过期/容量淘汰时在清理线程(持有eviction lock)中回调，需尽快返回，不能修改本缓存
+     */
+    @FunctionalInterface
+    public interface RemovalListener<K, V> {
+        /**
+         * 节点已从map移除
+         *
+         * @param key   key
+         * @param value value
+         * @param cause cause
+         */
+        void onRemoval(K key, V value, RemovalCause cause);
+    }
+
+    /**
+     * Node write listener
+     * 在put线程中、写入该key的map锁内回调，同一key的事件按其在map中发生的顺序回调；需尽快返回，不能修改本缓存
+     */
+    @FunctionalInterface
+    public interface WriteListener<K, V> {
+        /**
+         * 节点已写入map
+         *
+         * @param key        key
+         * @param value      value
+         * @param expireTime 过期时间点
+         */
+        void onWrite(K key, V value, long expireTime);
+    }
+
+    /**
+     * Value loader
+     */
+    @FunctionalInterface
+    public interface Loader<K, V> {
+        /**
+         * 加载值
+         *
+         * @param key key
+         * @return value, null 不缓存
+         * @throws Exception Exception
+         */
+        V load(K key) throws Exception;
+    }
+
+    /**
+     * Node weigher
+     */
+    @FunctionalInterface
+    public interface Weigher<K, V> {
+        /**
+         * 节点权重
+         *
+         * @param key   key
+         * @param value value
+         * @return weight &gt;= 0
+         */
+        int weigh(K key, V value);
+    }
+
+    /**
+     * 加载中的结果，记录执行加载的线程，用于发现loader递归加载同一key
+     */
+    private static final class LoadingFuture<V> extends CompletableFuture<V> {
+
+        private volatile Thread owner;
+
+        private LoadingFuture(Thread owner) {
+            this.owner = owner;
+        }
+    }
+
     public MapCache(Object mutex) {
+        this(mutex, DEFAULT_TICK_TIME);
+    }
+
+    public MapCache(Object mutex, long tickTime) {
+        this(mutex, tickTime, 0L);
+    }
+
+    public MapCache(Object mutex, long tickTime, long maximumWeight) {
+        this(mutex, tickTime, maximumWeight, null);
+    }
+
+    public MapCache(Object mutex, long tickTime, long maximumWeight, Weigher<? super K, ? super V> weigher) {
         super(DEFAULT_INITIAL_CAPACITY);
         if (MixedUtensil.objectNull(mutex)) {
             this.mutex = this;
         } else {
             this.mutex = mutex;
         }
+        this.timingWheel = new TimingWheel(tickTime, System.currentTimeMillis());
+        this.maximumWeight = maximumWeight;
+        this.weigher = weigher;
+        // 有weigher时权重可能是字节数，sketch按条目数从小开始增长
+        this.sketch = this.isBounded() ? new FrequencySketch(Math.min(maximumWeight, DEFAULT_INITIAL_CAPACITY)) : null;
+        for (int i = 0; i < this.removalCounts.length; i++) {
+            this.removalCounts[i] = new LongAdder();
+        }
     }
 
-    static class Node {
-        private final String key;
-        private String value;
-        private final Long expire;
-        volatile Long expireTime;
+    public static class Node<K, V> {
+        private final K key;
+        private V value;
+
+        /**
+         * 过期时间点，原始类型避免装箱
+         */
+        volatile long expireTime;
+
+        /**
+         * 已从map移除，等待从时间轮摘除
+         */
+        volatile boolean retired;
+
+        /**
+         * 时间轮链表指针，仅在evictionLock内访问
+         */
+        Node<?, ?> wheelPrev;
+        Node<?, ?> wheelNext;
+
+        /**
+         * 访问顺序链表指针、所在队列、权重，仅在evictionLock内访问
+         */
+        Node<?, ?> accessPrev;
+        Node<?, ?> accessNext;
+        byte queueType;
+        int weight;
 
-        public Node(String key, String value, Long expire) {
-            MixedUtensil.objectsNullPointerException(key, value, expire);
+        /**
+         * 时间轮哨兵节点
+         */
+        Node() {
+            this.key = null;
+        }
+
+        /**
+         * Constructor
+         *
+         * @param key    key
+         * @param value  value
+         * @param expire 存活毫秒数
+         */
+        public Node(K key, V value, long expire) {
+            MixedUtensil.objectsNullPointerException(key, value);
             this.key = key;
             this.value = value;
-            this.expire = expire;
-            this.expireTime = getAddExpireTime();
+            this.expireTime = expire + System.currentTimeMillis();
         }
 
-        public String getKey() {
+        public K getKey() {
             return key;
         }
 
-        public String getValue() {
+        public V getValue() {
             return value;
         }
 
-        public void setValue(String value) {
+        public void setValue(V value) {
             this.value = value;
         }
 
-        private final Long getAddExpireTime() {
-            return this.expire + System.currentTimeMillis();
+        public final long getExpireTime() {
+            return expireTime;
         }
 
         public final boolean isExpire() {
@@ -88,60 +390,1041 @@ public class MapCache extends ConcurrentHashMap<String, MapCache.Node> implement
         }
     }
 
+    /**
+     * 清理线程，按tick推进时间轮淘汰过期节点，无节点时等待put唤醒
+     */
     @Override
     public final void run() {
+        this.cleaner = Thread.currentThread();
         for (; !Thread.currentThread().isInterrupted(); ) {
-            if (this.isEmpty()) {
-                this.tryLockAwait(DEFAULT_TRY_LOCK_TIME_OUT, DEFAULT_AWAIT_TIME);
+            final long nextTickTime;
+            final boolean idle;
+            evictionLock.lock();
+            try {
+                final long start = System.nanoTime();
+                this.drain();
+                this.timingWheel.advance(System.currentTimeMillis(), this::expire);
+                nextTickTime = this.timingWheel.nextTickTime();
+                idle = this.timingWheel.isEmpty();
+                this.recordCleaner(System.nanoTime() - start);
+            } finally {
+                evictionLock.unlock();
             }
 
-            this.remove("");
+            if (idle) {
+                this.parkIdle(DEFAULT_AWAIT_TIME);
+                continue;
+            }
+            final long sleep = nextTickTime - System.currentTimeMillis();
+            if (0 < sleep) {
+                LockSupport.parkNanos(this, TimeUnit.MILLISECONDS.toNanos(sleep));
+            }
         }
     }
 
+    /**
+     * 立即处理积压并淘汰已到期节点
+     */
+    public void cleanUp() {
+        evictionLock.lock();
+        try {
+            this.drain();
+            this.timingWheel.advance(System.currentTimeMillis(), this::expire);
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    /**
+     * 处理积压后按淘汰顺序立即移除一个节点(probation、window、protected队头)，
+     * 供权重之外的资源(如堆外块)不足时腾出空间
+     *
+     * @return 没有可淘汰的节点返回false
+     */
+    boolean evictOne() {
+        evictionLock.lock();
+        try {
+            this.drain();
+            Node<?, ?> victim = this.probationDeque.peekFirst();
+            if (null == victim) {
+                victim = this.windowDeque.peekFirst();
+            }
+            if (null == victim) {
+                victim = this.protectedDeque.peekFirst();
+            }
+            if (null == victim) {
+                return false;
+            }
+            this.evictNode(victim);
+            return true;
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    /**
+     * 读取时惰性过期，不会返回已过期节点
+     *
+     * @param key key
+     * @return Node
+     */
     @Override
-    public Node put(String key, Node value) {
-        final Node v = super.put(key, value);
-        this.tryLockSignal(0);
+    public Node<K, V> get(Object key) {
+        final HotKeySketch hotKeys = this.hotKeys;
+        if (null != hotKeys) {
+            hotKeys.record(key);
+        }
+        final Node<K, V> v = super.get(key);
+        if (null == v) {
+            missCount.increment();
+            return null;
+        }
+        if (v.isExpire()) {
+            missCount.increment();
+            if (this.removeNode(key, v, RemovalCause.EXPIRED)) {
+                this.replaced(v, null);
+            }
+            return null;
+        }
+        hitCount.increment();
+        if (this.isBounded() && this.readBuffer.offer(v)) {
+            this.tryDrain();
+        }
         return v;
     }
 
     /**
-     * tryLockAwait
+     * 取值
      *
-     * @param timeOut timeOut
-     * @param time    time
+     * @param key key
+     * @return value, 不存在或已过期返回null
      */
-    private void tryLockAwait(final long timeOut, final long time) {
-        try {
-            if (lock.tryLock(timeOut, TimeUnit.MILLISECONDS)) {
-                this.monitorAwait = true;
-                monitor.await(time, TimeUnit.MILLISECONDS);
+    public V getValue(Object key) {
+        final Node<K, V> v = this.get(key);
+        return null == v ? null : v.getValue();
+    }
+
+    /**
+     * 取值，未命中时由loader加载，同一key的并发未命中合并为一次加载
+     *
+     * @param key    key
+     * @param loader loader
+     * @param expire 加载值存活毫秒数
+     * @return value
+     */
+    public V get(K key, Loader<? super K, ? extends V> loader, long expire) {
+        return this.get(key, loader, expire, 0L);
+    }
+
+    /**
+     * 取值，未命中时由loader加载，同一key的并发未命中合并为一次加载
+     * 命中但剩余存活时间小于refreshAhead时，返回当前值并异步刷新，热点key不会过期变冷；
+     * loader 中再加载同一key抛出IllegalStateException，而不是等待自己
+     *
+     * @param key          key
+     * @param loader       loader
+     * @param expire       加载值存活毫秒数
+     * @param refreshAhead 提前刷新毫秒数，&lt;= 0 不刷新
+     * @return value
+     */
+    public V get(K key, Loader<? super K, ? extends V> loader, long expire, long refreshAhead) {
+        MixedUtensil.objectsNullPointerException(key, loader);
+        final Node<K, V> node = this.get(key);
+        if (null != node) {
+            if (0L < refreshAhead && refreshAhead > node.expireTime - System.currentTimeMillis()) {
+                this.refresh(key, loader, expire);
+            }
+            return node.getValue();
+        }
+
+        final LoadingFuture<V> future = new LoadingFuture<>(Thread.currentThread());
+        final LoadingFuture<V> inFlight = this.loading.putIfAbsent(key, future);
+        if (null != inFlight) {
+            if (Thread.currentThread() == inFlight.owner) {
+                // loader 中再加载同一key，等待自己会永久阻塞
+                throw new IllegalStateException("Recursive load of key " + key + "...");
             }
-        } catch (InterruptedException e) {
-            Thread.currentThread().interrupt();
+            return join(inFlight);
+        }
+        try {
+            // 拿到加载权之前可能已有线程加载完成
+            final Node<K, V> loaded = super.get(key);
+            final V value = null == loaded || loaded.isExpire() ? this.load(key, loader, expire) : loaded.getValue();
+            future.complete(value);
+            return value;
+        } catch (Throwable t) {
+            future.completeExceptionally(t);
+            throw t;
         } finally {
-            lock.unlock();
+            this.loading.remove(key, future);
         }
     }
 
     /**
-     * tryLockSignal
+     * 异步重新加载，已在加载中时不重复提交
      *
-     * @param timeOut timeOut
+     * @param key    key
+     * @param loader loader
+     * @param expire 加载值存活毫秒数
+     * @return 加载结果
      */
-    private void tryLockSignal(final long timeOut) {
+    public CompletableFuture<V> refresh(K key, Loader<? super K, ? extends V> loader, long expire) {
+        MixedUtensil.objectsNullPointerException(key, loader);
+        final LoadingFuture<V> future = new LoadingFuture<>(null);
+        final LoadingFuture<V> inFlight = this.loading.putIfAbsent(key, future);
+        if (null != inFlight) {
+            return inFlight;
+        }
         try {
-            if (this.monitorAwait) {
-                if (lock.tryLock(timeOut, TimeUnit.MILLISECONDS)) {
-                    this.monitorAwait = false;
-                    monitor.signal();
+            this.executor.execute(() -> {
+                future.owner = Thread.currentThread();
+                try {
+                    future.complete(this.load(key, loader, expire));
+                } catch (Throwable t) {
+                    future.completeExceptionally(t);
+                } finally {
+                    this.loading.remove(key, future);
+                }
+            });
+        } catch (RuntimeException e) {
+            this.loading.remove(key, future);
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
+
+    public void setExecutor(Executor executor) {
+        MixedUtensil.objectNullPointerException(executor);
+        this.executor = executor;
+    }
+
+    /**
+     * 调用loader并放入
+     *
+     * @param key    key
+     * @param loader loader
+     * @param expire expire
+     * @return value
+     */
+    private V load(final K key, final Loader<? super K, ? extends V> loader, final long expire) {
+        final V value;
+        final long start = System.nanoTime();
+        try {
+            value = loader.load(key);
+        } catch (RuntimeException e) {
+            this.recordLoad(false, start);
+            throw e;
+        } catch (Exception e) {
+            this.recordLoad(false, start);
+            throw new RuntimeException(e);
+        }
+        this.recordLoad(null != value, start);
+        if (null != value) {
+            this.put(key, value, expire);
+        }
+        return value;
+    }
+
+    /**
+     * 等待其它线程的加载结果
+     *
+     * @param future future
+     * @return value
+     */
+    private static <V> V join(final CompletableFuture<V> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            final Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new RuntimeException(cause);
+        }
+    }
+
+    /**
+     * 放入值
+     *
+     * @param key    key
+     * @param value  value
+     * @param expire 存活毫秒数
+     * @return 旧值
+     */
+    public V put(K key, V value, long expire) {
+        final Node<K, V> v = this.put(key, new Node<>(key, value, expire));
+        return null == v || v.isExpire() ? null : v.getValue();
+    }
+
+    @Override
+    public Node<K, V> put(K key, Node<K, V> value) {
+        final Node<K, V> v = this.putNode(key, value);
+        this.replaced(v, value);
+        return v;
+    }
+
+    /**
+     * 批量放入，每个节点可有不同的存活时间，整批只唤醒一次清理线程
+     * 先为整批创建节点，有null key或value时不放入任何一个
+     *
+     * @param keys    keys
+     * @param values  values，与keys一一对应
+     * @param expires 存活毫秒数，与keys一一对应
+     */
+    public void putAll(K[] keys, V[] values, long[] expires) {
+        MixedUtensil.objectsNullPointerException(keys, values, expires);
+        if (keys.length != values.length || keys.length != expires.length) {
+            throw new RuntimeException("Keys, values and expires must have the same length...");
+        }
+        final List<Node<K, V>> nodes = new ArrayList<>(keys.length);
+        for (int i = 0; i < keys.length; i++) {
+            nodes.add(new Node<>(keys[i], values[i], expires[i]));
+        }
+        this.putNodes(null, nodes);
+    }
+
+    /**
+     * 批量放入，整批只唤醒一次清理线程
+     * 先为整批创建节点，有null key或value时不放入任何一个
+     *
+     * @param values key -&gt; value
+     * @param expire 存活毫秒数
+     */
+    public void putAll(Map<? extends K, ? extends V> values, long expire) {
+        final List<Node<K, V>> nodes = new ArrayList<>(values.size());
+        for (Map.Entry<? extends K, ? extends V> entry : values.entrySet()) {
+            nodes.add(new Node<>(entry.getKey(), entry.getValue(), expire));
+        }
+        this.putNodes(null, nodes);
+    }
+
+    /**
+     * ConcurrentHashMap.putAll 不经过put，这里逐个记录后整批唤醒
+     * 有null key或节点时不放入任何一个
+     *
+     * @param m key -&gt; Node
+     */
+    @Override
+    public void putAll(Map<? extends K, ? extends Node<K, V>> m) {
+        final List<K> keys = new ArrayList<>(m.size());
+        final List<Node<K, V>> nodes = new ArrayList<>(m.size());
+        for (Map.Entry<? extends K, ? extends Node<K, V>> entry : m.entrySet()) {
+            MixedUtensil.objectsNullPointerException(entry.getKey(), entry.getValue());
+            keys.add(entry.getKey());
+            nodes.add(entry.getValue());
+        }
+        this.putNodes(keys, nodes);
+    }
+
+    /**
+     * 逐个放入，中途异常时已放入的节点仍唤醒清理线程
+     *
+     * @param keys  keys，null 时用节点的key
+     * @param nodes nodes
+     */
+    private void putNodes(final List<K> keys, final List<Node<K, V>> nodes) {
+        try {
+            for (int i = 0; i < nodes.size(); i++) {
+                final Node<K, V> node = nodes.get(i);
+                this.replaced(this.putNode(null == keys ? node.getKey() : keys.get(i), node), node, true);
+            }
+        } finally {
+            this.batchReplaced();
+        }
+    }
+
+    /**
+     * 批量取值，结果按位置写入values，整批只累加一次计数、只尝试一次drain
+     *
+     * @param keys   keys
+     * @param values 输出，长度不小于keys，不存在或已过期的位置为null
+     * @return 命中数
+     */
+    public int getAll(K[] keys, V[] values) {
+        MixedUtensil.objectsNullPointerException(keys, values);
+        final long now = System.currentTimeMillis();
+        int hits = 0;
+        for (int i = 0; i < keys.length; i++) {
+            final Node<K, V> node = this.lookup(keys[i], now);
+            if (null == node) {
+                values[i] = null;
+            } else {
+                values[i] = node.getValue();
+                hits++;
+            }
+        }
+        this.batchLookedUp(hits, keys.length - hits);
+        return hits;
+    }
+
+    /**
+     * 批量取值，只包含命中的key
+     *
+     * @param keys keys
+     * @return key -&gt; value
+     */
+    public Map<K, V> getAll(Collection<? extends K> keys) {
+        final long now = System.currentTimeMillis();
+        final Map<K, V> values = new HashMap<>((int) (keys.size() / 0.75F) + 1);
+        for (K key : keys) {
+            final Node<K, V> node = this.lookup(key, now);
+            if (null != node) {
+                values.put(key, node.getValue());
+            }
+        }
+        this.batchLookedUp(values.size(), keys.size() - values.size());
+        return values;
+    }
+
+    /**
+     * 批量读的单个查找，惰性过期，不计数、不drain
+     *
+     * @param key key
+     * @param now now
+     * @return Node
+     */
+    private Node<K, V> lookup(final Object key, final long now) {
+        final HotKeySketch hotKeys = this.hotKeys;
+        if (null != hotKeys) {
+            hotKeys.record(key);
+        }
+        final Node<K, V> v = super.get(key);
+        if (null == v) {
+            return null;
+        }
+        if (now > v.expireTime) {
+            if (this.removeNode(key, v, RemovalCause.EXPIRED)) {
+                this.replaced(v, null, true);
+            }
+            return null;
+        }
+        if (this.isBounded()) {
+            this.readBuffer.offer(v);
+        }
+        return v;
+    }
+
+    private void batchLookedUp(final int hits, final int misses) {
+        hitCount.add(hits);
+        missCount.add(misses);
+        if (this.isBounded()) {
+            this.tryDrain();
+        }
+    }
+
+    @Override
+    public Node<K, V> putIfAbsent(K key, Node<K, V> value) {
+        final Node<K, V> v;
+        if (this.writeListeners.isEmpty()) {
+            v = super.putIfAbsent(key, value);
+        } else {
+            final Object[] previous = new Object[1];
+            super.compute(key, (k, n) -> {
+                if (null != n) {
+                    previous[0] = n;
+                    return n;
+                }
+                this.notifyWrite(value);
+                return value;
+            });
+            v = cast(previous[0]);
+        }
+        if (null == v) {
+            this.replaced(null, value);
+        }
+        return v;
+    }
+
+    @Override
+    public Node<K, V> remove(Object key) {
+        final Node<K, V> v = this.removeKey(key, RemovalCause.EXPLICIT);
+        this.replaced(v, null);
+        return v;
+    }
+
+    @Override
+    public boolean remove(Object key, Object value) {
+        if (value instanceof Node && this.removeNode(key, (Node<?, ?>) value, RemovalCause.EXPLICIT)) {
+            this.replaced((Node<?, ?>) value, null);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * 逐个移除，保证每个节点都回调removalListeners，移除原因为CLEARED
+     */
+    @Override
+    public void clear() {
+        for (K key : this.keySet()) {
+            this.replaced(this.removeKey(key, RemovalCause.CLEARED), null);
+        }
+    }
+
+    /**
+     * 写入map；有监听器时在key的锁内回调，同一key的事件与map中的写入顺序一致，
+     * 不会出现后写入的值先回调、旧值后回调而覆盖监听方状态
+     *
+     * @param key  key
+     * @param node node
+     * @return 旧节点
+     */
+    private Node<K, V> putNode(final K key, final Node<K, V> node) {
+        if (this.writeListeners.isEmpty() && this.removalListeners.isEmpty()) {
+            final Node<K, V> v = super.put(key, node);
+            if (null != v && v != node) {
+                this.notifyRemoval(v, RemovalCause.REPLACED);
+            }
+            return v;
+        }
+        final Object[] previous = new Object[1];
+        super.compute(key, (k, v) -> {
+            previous[0] = v;
+            if (v != node) {
+                if (null != v) {
+                    this.notifyRemoval(v, RemovalCause.REPLACED);
                 }
+                this.notifyWrite(node);
+            }
+            return node;
+        });
+        return cast(previous[0]);
+    }
+
+    /**
+     * 移除key，有removalListeners时在key的锁内回调
+     *
+     * @param key   key
+     * @param cause cause
+     * @return 被移除的节点
+     */
+    @SuppressWarnings("unchecked")
+    private Node<K, V> removeKey(final Object key, final RemovalCause cause) {
+        if (this.removalListeners.isEmpty()) {
+            final Node<K, V> v = super.remove(key);
+            if (null != v) {
+                this.notifyRemoval(v, cause);
+            }
+            return v;
+        }
+        final Object[] previous = new Object[1];
+        super.computeIfPresent((K) key, (k, v) -> {
+            previous[0] = v;
+            this.notifyRemoval(v, cause);
+            return null;
+        });
+        return cast(previous[0]);
+    }
+
+    /**
+     * 仅当key仍映射到node时移除，有removalListeners时在key的锁内回调
+     *
+     * @param key   key
+     * @param node  node
+     * @param cause cause
+     * @return 移除返回true
+     */
+    @SuppressWarnings("unchecked")
+    private boolean removeNode(final Object key, final Node<?, ?> node, final RemovalCause cause) {
+        if (this.removalListeners.isEmpty()) {
+            if (super.remove(key, node)) {
+                this.notifyRemoval(node, cause);
+                return true;
+            }
+            return false;
+        }
+        final boolean[] removed = new boolean[1];
+        super.computeIfPresent((K) key, (k, v) -> {
+            if (v != node) {
+                return v;
+            }
+            removed[0] = true;
+            this.notifyRemoval(node, cause);
+            return null;
+        });
+        return removed[0];
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <K, V> Node<K, V> cast(final Object node) {
+        return (Node<K, V>) node;
+    }
+
+    public void addRemovalListener(RemovalListener<? super K, ? super V> removalListener) {
+        MixedUtensil.objectNullPointerException(removalListener);
+        this.removalListeners.add(removalListener);
+    }
+
+    public void removeRemovalListener(RemovalListener<? super K, ? super V> removalListener) {
+        this.removalListeners.remove(removalListener);
+    }
+
+    public void addWriteListener(WriteListener<? super K, ? super V> writeListener) {
+        MixedUtensil.objectNullPointerException(writeListener);
+        this.writeListeners.add(writeListener);
+    }
+
+    public void removeWriteListener(WriteListener<? super K, ? super V> writeListener) {
+        this.writeListeners.remove(writeListener);
+    }
+
+    /**
+     * 记录节点替换，旧节点摘除、新节点挂载由持有evictionLock的线程完成，监听器已在写入map时回调
+     * 通过其它途径(compute/replace等)移除的节点在其过期tick时释放，且不回调监听器
+     *
+     * @param oldNode oldNode
+     * @param newNode newNode
+     */
+    private void replaced(final Node<?, ?> oldNode, final Node<?, ?> newNode) {
+        this.replaced(oldNode, newNode, false);
+    }
+
+    /**
+     * 记录节点替换
+     *
+     * @param oldNode oldNode
+     * @param newNode newNode
+     * @param batch   批量操作中，唤醒与drain留给batchReplaced
+     */
+    private void replaced(final Node<?, ?> oldNode, final Node<?, ?> newNode, final boolean batch) {
+        if (oldNode == newNode) {
+            return;
+        }
+        boolean drain = false;
+        if (null != oldNode) {
+            oldNode.retired = true;
+            drain = this.offer(oldNode);
+        }
+        if (null != newNode) {
+            newNode.retired = false;
+            drain |= this.offer(newNode);
+            if (!batch) {
+                this.signalCleaner();
+            }
+        }
+        // 有界时每次写都尝试处理，避免超出maximumWeight过多
+        if (drain || (this.isBounded() && !batch)) {
+            this.tryDrain();
+        }
+    }
+
+    /**
+     * 写入writeBuffer，所在段满时阻塞获取evictionLock处理积压后重试
+     *
+     * @param node node
+     * @return 积压过半，应尝试drain
+     */
+    private boolean offer(final Node<?, ?> node) {
+        for (; ; ) {
+            final int result = this.writeBuffer.offer(node);
+            if (WriteBuffer.FULL != result) {
+                return WriteBuffer.DRAIN == result;
+            }
+            evictionLock.lock();
+            try {
+                this.drain();
+            } finally {
+                evictionLock.unlock();
+            }
+        }
+    }
+
+    /**
+     * 批量写结束，唤醒一次清理线程并尝试drain
+     */
+    private void batchReplaced() {
+        this.signalCleaner();
+        if (this.isBounded()) {
+            this.tryDrain();
+        }
+    }
+
+    /**
+     * 非阻塞处理积压
+     */
+    private void tryDrain() {
+        if (evictionLock.tryLock()) {
+            try {
+                this.drain();
+            } finally {
+                evictionLock.unlock();
             }
-        } catch (InterruptedException e) {
-            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * 处理命中记录和待挂载/摘除节点，需持有evictionLock
+     */
+    private void drain() {
+        if (this.isBounded()) {
+            this.readBuffer.drain(this::onAccess);
+        }
+        this.writeBuffer.drain(this::onWrite);
+        if (this.isBounded()) {
+            this.evict();
+        }
+    }
+
+    /**
+     * 按节点当前状态挂载或摘除，同一节点的两次记录落在不同段时也与顺序无关
+     *
+     * @param node node
+     */
+    private void onWrite(final Node<?, ?> node) {
+        if (node.retired) {
+            this.timingWheel.cancel(node);
+            this.onRemove(node);
+        } else {
+            this.timingWheel.schedule(node);
+            this.onAdd(node);
+        }
+    }
+
+    /**
+     * 时间轮到期回调，仅移除仍映射到该节点的key
+     *
+     * @param node node
+     */
+    private void expire(final Node<?, ?> node) {
+        node.retired = true;
+        this.onRemove(node);
+        if (this.removeNode(node.getKey(), node, RemovalCause.EXPIRED)) {
+            final long lag = Math.max(0L, System.currentTimeMillis() - node.expireTime);
+            this.expireCount++;
+            this.totalExpireLag += lag;
+            if (this.maxExpireLag < lag) {
+                this.maxExpireLag = lag;
+            }
+        }
+    }
+
+    /**
+     * 回调removalListeners，异常不影响清理
+     *
+     * @param node  node
+     * @param cause cause
+     */
+    @SuppressWarnings("unchecked")
+    private void notifyRemoval(final Node<?, ?> node, final RemovalCause cause) {
+        this.removalCounts[cause.ordinal()].increment();
+        for (RemovalListener<? super K, ? super V> listener : this.removalListeners) {
+            try {
+                listener.onRemoval((K) node.getKey(), (V) node.getValue(), cause);
+            } catch (Throwable t) {
+                t.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * 回调writeListeners，异常不影响写入
+     *
+     * @param node node
+     */
+    @SuppressWarnings("unchecked")
+    private void notifyWrite(final Node<?, ?> node) {
+        for (WriteListener<? super K, ? super V> listener : this.writeListeners) {
+            try {
+                listener.onWrite((K) node.getKey(), (V) node.getValue(), node.expireTime);
+            } catch (Throwable t) {
+                t.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * 新节点进入window
+     *
+     * @param node node
+     */
+    @SuppressWarnings("unchecked")
+    private void onAdd(final Node<?, ?> node) {
+        if (!this.isBounded()) {
+            return;
+        }
+        if (QUEUE_NONE != node.queueType) {
+            this.onAccess(node);
+            return;
+        }
+        node.weight = null == this.weigher ? 1 : this.weigh((Node<K, V>) node);
+        this.sketch.ensureCapacity(++this.policySize);
+        this.sketch.increment(node.getKey().hashCode());
+        node.queueType = QUEUE_WINDOW;
+        this.windowDeque.linkLast(node);
+        this.weightedSize += node.weight;
+    }
+
+    /**
+     * 命中：window内移到队尾，probation晋升protected，protected移到队尾
+     *
+     * @param node node
+     */
+    private void onAccess(final Node<?, ?> node) {
+        if (node.retired || QUEUE_NONE == node.queueType) {
+            return;
+        }
+        this.sketch.increment(node.getKey().hashCode());
+        if (QUEUE_WINDOW == node.queueType) {
+            this.windowDeque.moveToBack(node);
+        } else if (QUEUE_PROBATION == node.queueType) {
+            this.probationDeque.unlink(node);
+            node.queueType = QUEUE_PROTECTED;
+            this.protectedDeque.linkLast(node);
+            // protected 超出后降级最久未访问的到probation
+            final long protectedMaximum = this.mainMaximum() * 4L / 5L;
+            for (Node<?, ?> first = this.protectedDeque.peekFirst(); null != first
+                    && protectedMaximum < this.protectedDeque.weight(); first = this.protectedDeque.peekFirst()) {
+                this.protectedDeque.unlink(first);
+                first.queueType = QUEUE_PROBATION;
+                this.probationDeque.linkLast(first);
+            }
+        } else {
+            this.protectedDeque.moveToBack(node);
+        }
+    }
+
+    /**
+     * 从所在队列移除
+     *
+     * @param node node
+     */
+    private void onRemove(final Node<?, ?> node) {
+        if (QUEUE_NONE == node.queueType) {
+            return;
+        }
+        this.dequeOf(node.queueType).unlink(node);
+        node.queueType = QUEUE_NONE;
+        this.weightedSize -= node.weight;
+        this.policySize--;
+    }
+
+    /**
+     * window 超出部分进入probation成为候选，总权重超出时候选与probation队头比较访问频率，淘汰低频者
+     */
+    private void evict() {
+        int candidates = 0;
+        final long windowMaximum = this.windowMaximum();
+        for (Node<?, ?> first = this.windowDeque.peekFirst(); null != first
+                && windowMaximum < this.windowDeque.weight(); first = this.windowDeque.peekFirst()) {
+            this.windowDeque.unlink(first);
+            first.queueType = QUEUE_PROBATION;
+            this.probationDeque.linkLast(first);
+            candidates++;
+        }
+
+        while (this.maximumWeight < this.weightedSize) {
+            final Node<?, ?> victim = this.probationDeque.peekFirst();
+            if (null == victim) {
+                final Node<?, ?> first = this.protectedDeque.isEmpty()
+                        ? this.windowDeque.peekFirst() : this.protectedDeque.peekFirst();
+                if (null == first) {
+                    break;
+                }
+                this.evictNode(first);
+                continue;
+            }
+            final Node<?, ?> candidate = this.probationDeque.peekLast();
+            if (0 >= candidates || victim == candidate) {
+                this.evictNode(victim);
+                candidates = Math.max(0, candidates - 1);
+                continue;
+            }
+            final int candidateFrequency = this.sketch.frequency(candidate.getKey().hashCode());
+            final int victimFrequency = this.sketch.frequency(victim.getKey().hashCode());
+            if (candidateFrequency > victimFrequency) {
+                this.evictNode(victim);
+            } else {
+                this.evictNode(candidate);
+                candidates--;
+            }
+        }
+    }
+
+    /**
+     * 容量淘汰
+     *
+     * @param node node
+     */
+    private void evictNode(final Node<?, ?> node) {
+        node.retired = true;
+        this.onRemove(node);
+        this.timingWheel.cancel(node);
+        this.removeNode(node.getKey(), node, RemovalCause.SIZE);
+    }
+
+    private int weigh(final Node<K, V> node) {
+        return Math.max(0, this.weigher.weigh(node.getKey(), node.getValue()));
+    }
+
+    private AccessOrderDeque dequeOf(final byte queueType) {
+        if (QUEUE_WINDOW == queueType) {
+            return this.windowDeque;
+        }
+        if (QUEUE_PROBATION == queueType) {
+            return this.probationDeque;
+        }
+        return this.protectedDeque;
+    }
+
+    private long windowMaximum() {
+        return Math.max(1L, this.maximumWeight / 100L);
+    }
+
+    private long mainMaximum() {
+        return this.maximumWeight - this.windowMaximum();
+    }
+
+    /**
+     * 是否有界
+     *
+     * @return boolean
+     */
+    public boolean isBounded() {
+        return 0L < this.maximumWeight;
+    }
+
+    public long getMaximumWeight() {
+        return maximumWeight;
+    }
+
+    /**
+     * 当前总权重，有界时有效
+     *
+     * @return weightedSize
+     */
+    public long getWeightedSize() {
+        return weightedSize;
+    }
+
+    public long getHitCount() {
+        return hitCount.sum();
+    }
+
+    public long getMissCount() {
+        return missCount.sum();
+    }
+
+    /**
+     * 容量淘汰数
+     *
+     * @return evictionCount
+     */
+    public long getEvictionCount() {
+        return this.removalCounts[RemovalCause.SIZE.ordinal()].sum();
+    }
+
+    /**
+     * 开启热点key统计，跟踪capacity个候选，capacity越大前k个越准
+     *
+     * @param capacity 跟踪的key数
+     */
+    public void enableHotKeys(int capacity) {
+        this.hotKeys = new HotKeySketch(capacity);
+    }
+
+    public void disableHotKeys() {
+        this.hotKeys = null;
+    }
+
+    /**
+     * 访问最多的k个key
+     *
+     * @param k k
+     * @return key -&gt; 估计访问次数，按次数降序，未开启时为空
+     */
+    @SuppressWarnings("unchecked")
+    public Map<K, Long> getHotKeys(int k) {
+        final HotKeySketch hotKeys = this.hotKeys;
+        return null == hotKeys ? new LinkedHashMap<>() : (Map<K, Long>) (Map<?, Long>) hotKeys.top(k);
+    }
+
+    /**
+     * 统计快照
+     *
+     * @return MapCacheStats
+     */
+    public MapCacheStats stats() {
+        return this.stats(DEFAULT_HOT_KEYS);
+    }
+
+    /**
+     * 统计快照
+     *
+     * @param k 热点key数
+     * @return MapCacheStats
+     */
+    public MapCacheStats stats(int k) {
+        final long[] counts = new long[this.removalCounts.length];
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] = this.removalCounts[i].sum();
+        }
+        final HotKeySketch hotKeys = this.hotKeys;
+        final Map<Object, Long> errors = new LinkedHashMap<>();
+        return new MapCacheStats(hitCount.sum(), missCount.sum(), loadSuccessCount.sum(), loadFailureCount.sum()
+                , totalLoadNanos.sum(), counts, this.mappingCount(), weightedSize, cleanerRunCount, cleanerTotalNanos
+                , cleanerMaxNanos, expireCount, totalExpireLag, maxExpireLag
+                , null == hotKeys ? new LinkedHashMap<>() : hotKeys.top(k, errors), errors);
+    }
+
+    /**
+     * 清空热点key和清理线程最大耗时、最大过期延迟，便于观察一段时间内的峰值
+     */
+    public void resetPeaks() {
+        final HotKeySketch hotKeys = this.hotKeys;
+        if (null != hotKeys) {
+            hotKeys.reset();
+        }
+        evictionLock.lock();
+        try {
+            this.cleanerMaxNanos = 0L;
+            this.maxExpireLag = 0L;
         } finally {
-            lock.unlock();
+            evictionLock.unlock();
+        }
+    }
+
+    private void recordLoad(final boolean success, final long start) {
+        this.totalLoadNanos.add(System.nanoTime() - start);
+        if (success) {
+            this.loadSuccessCount.increment();
+        } else {
+            this.loadFailureCount.increment();
+        }
+    }
+
+    /**
+     * 记录清理线程单次耗时，需持有evictionLock
+     *
+     * @param nanos nanos
+     */
+    private void recordCleaner(final long nanos) {
+        this.cleanerRunCount++;
+        this.cleanerTotalNanos += nanos;
+        if (this.cleanerMaxNanos < nanos) {
+            this.cleanerMaxNanos = nanos;
+        }
+    }
+
+    /**
+     * 空闲时park，先发布PARKED再检查积压，与signalCleaner先入队再读状态配对，不会漏唤醒
+     *
+     * @param time 最长park毫秒数
+     */
+    private void parkIdle(final long time) {
+        this.cleanerState.set(CLEANER_PARKED);
+        if (this.writeBuffer.isEmpty()) {
+            LockSupport.parkNanos(this, TimeUnit.MILLISECONDS.toNanos(time));
+        }
+        this.cleanerState.set(CLEANER_RUNNING);
+    }
+
+    /**
+     * 唤醒空闲的清理线程，无锁
+     */
+    private void signalCleaner() {
+        if (CLEANER_PARKED == this.cleanerState.get()
+                && this.cleanerState.compareAndSet(CLEANER_PARKED, CLEANER_RUNNING)) {
+            LockSupport.unpark(this.cleaner);
         }
     }
 }
@@ -0,0 +1,454 @@
+package com.xcoder.utilities.common;
+
+import com.xcoder.utilities.io.Io;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+/**
+ * MapCache 多JVM失效广播
+ * 本地put与显式remove放入每个peer各自的发送缓冲(按key合并，同一key只保留最后一次)，由该peer的发送线程按批通过TCP发出；
+ * 容量淘汰和过期是各节点自己的策略，不广播。peer 收到后删除本地key，配置valueCodec时put改为复制值。远端事件应用到本地时不再广播
+ * <p>
+ * 每个peer独立连接与退避，一个peer不可达不影响其它peer；不可达期间或缓冲溢出时丢弃该peer的事件，
+ * 重新连上后先发一条CLEAR让其清空缓存，不会留下已失效的值
+ * <p>
+ * 帧格式：[int recordCount][record...]，record 与MapCacheSnapshot相同；
+ * 接收方校验记录数与key/value长度，超出MAX_RECORD_LENGTH等上限时断开连接，不按对端给出的长度分配内存
+ *
+ * @author chuck lee
+ */
+public class MapCacheInvalidationBus<K, V> implements AutoCloseable {
+
+    /**
+     * 默认批量等待时间
+     */
+    public static final Long DEFAULT_BATCH_TIME = 10L;
+
+    /**
+     * 单批最大记录数
+     */
+    public static final Integer DEFAULT_BATCH_SIZE = 1024;
+
+    /**
+     * 每个peer发送缓冲最多合并的key数，超过后丢弃并在下一批先发CLEAR
+     */
+    public static final Integer DEFAULT_BUFFER_KEYS = 1 << 16;
+
+    /**
+     * 单条记录key或value的最大字节数，value超过时只发失效，key超过时改发CLEAR
+     */
+    public static final Integer MAX_RECORD_LENGTH = 16 << 20;
+
+    private static final byte OP_PUT = 1;
+
+    private static final byte OP_INVALIDATE = 2;
+
+    private static final byte OP_CLEAR = 3;
+
+    private static final int CONNECT_TIMEOUT = 3000;
+
+    /**
+     * 连接失败后的退避时间，逐次翻倍
+     */
+    private static final long MIN_BACKOFF = 100L;
+
+    private static final long MAX_BACKOFF = 10000L;
+
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    /**
+     * 正在应用远端事件，不广播
+     */
+    private static final ThreadLocal<Boolean> APPLYING = new ThreadLocal<>();
+
+    /**
+     * 本地事件
+     */
+    private static final class Event<K, V> {
+        private final byte op;
+        private final K key;
+        private final V value;
+        private final long expireTime;
+
+        private Event(byte op, K key, V value, long expireTime) {
+            this.op = op;
+            this.key = key;
+            this.value = value;
+            this.expireTime = expireTime;
+        }
+    }
+
+    /**
+     * peer 出站连接与发送缓冲，缓冲由自身同步，连接只在该peer的发送线程上访问
+     */
+    private static final class Peer<K, V> {
+        private final String host;
+        private final int port;
+        private final LinkedHashMap<K, Event<K, V>> buffer = new LinkedHashMap<>();
+        private Socket socket;
+        private DataOutputStream dos;
+        /**
+         * 有事件被丢弃，下一批先发CLEAR
+         */
+        private boolean resync;
+        private long backoff;
+        /**
+         * 退避到此时间前丢弃事件
+         */
+        private long retryTime;
+        private Thread sender;
+
+        private Peer(String host, int port) {
+            this.host = host;
+            this.port = port;
+        }
+    }
+
+    private final MapCache<K, V> cache;
+
+    private final int port;
+
+    private final List<Peer<K, V>> peers = new ArrayList<>();
+
+    private final MapCacheSnapshot.Codec<K> keyCodec;
+
+    /**
+     * null 时只做失效
+     */
+    private final MapCacheSnapshot.Codec<V> valueCodec;
+
+    private final List<Socket> inbound = new ArrayList<>();
+
+    private final MapCache.WriteListener<K, V> writeListener;
+
+    private final MapCache.RemovalListener<K, V> removalListener;
+
+    private volatile boolean running;
+
+    private ServerSocket serverSocket;
+
+    /**
+     * Constructor
+     *
+     * @param cache      cache
+     * @param port       本地监听端口
+     * @param peers      peer 地址 host:port
+     * @param keyCodec   keyCodec
+     * @param valueCodec valueCodec，null 时只广播失效
+     */
+    public MapCacheInvalidationBus(MapCache<K, V> cache, int port, List<String> peers
+            , MapCacheSnapshot.Codec<K> keyCodec, MapCacheSnapshot.Codec<V> valueCodec) {
+        MixedUtensil.objectsNullPointerException(cache, peers, keyCodec);
+        this.cache = cache;
+        this.port = port;
+        this.keyCodec = keyCodec;
+        this.valueCodec = valueCodec;
+        for (String peer : peers) {
+            final int index = peer.lastIndexOf(':');
+            if (0 >= index) {
+                throw new RuntimeException("Peer address must be host:port...");
+            }
+            this.peers.add(new Peer<>(peer.substring(0, index), Integer.parseInt(peer.substring(index + 1))));
+        }
+        this.writeListener = (key, value, expireTime) -> {
+            if (null == this.valueCodec) {
+                this.publish(new Event<>(OP_INVALIDATE, key, null, 0L));
+            } else {
+                this.publish(new Event<>(OP_PUT, key, value, expireTime));
+            }
+        };
+        this.removalListener = (key, value, cause) -> {
+            // 覆盖由put广播，容量淘汰和过期不代表值已变
+            if (MapCache.RemovalCause.EXPLICIT == cause) {
+                this.publish(new Event<>(OP_INVALIDATE, key, null, 0L));
+            }
+        };
+    }
+
+    /**
+     * 开始监听与广播
+     *
+     * @throws IOException IOException
+     */
+    public synchronized void start() throws IOException {
+        if (this.running) {
+            return;
+        }
+        this.serverSocket = new ServerSocket(this.port);
+        this.running = true;
+        this.daemon(this::accept, "map-cache-bus-acceptor-" + this.port);
+        for (Peer<K, V> peer : this.peers) {
+            peer.sender = this.daemon(() -> this.send(peer), "map-cache-bus-sender-" + peer.host + ":" + peer.port);
+        }
+        this.cache.addWriteListener(this.writeListener);
+        this.cache.addRemovalListener(this.removalListener);
+    }
+
+    /**
+     * 本地监听端口，port 为0时为实际绑定的端口
+     *
+     * @return port
+     */
+    public int getLocalPort() {
+        return this.serverSocket.getLocalPort();
+    }
+
+    @Override
+    public synchronized void close() {
+        this.cache.removeWriteListener(this.writeListener);
+        this.cache.removeRemovalListener(this.removalListener);
+        this.running = false;
+        Io.closeableClose(this.serverSocket);
+        for (Peer<K, V> peer : this.peers) {
+            if (null != peer.sender) {
+                peer.sender.interrupt();
+            }
+        }
+        synchronized (this.inbound) {
+            for (Socket socket : this.inbound) {
+                Io.closeableClose(socket);
+            }
+            this.inbound.clear();
+        }
+        for (Peer<K, V> peer : this.peers) {
+            Io.closeableClose(peer.dos, peer.socket);
+        }
+    }
+
+    private void publish(final Event<K, V> event) {
+        if (!this.running || Boolean.TRUE.equals(APPLYING.get())) {
+            return;
+        }
+        final long now = System.currentTimeMillis();
+        for (Peer<K, V> peer : this.peers) {
+            synchronized (peer.buffer) {
+                if (now < peer.retryTime) {
+                    // 退避中，重连后CLEAR
+                    this.resync(peer);
+                    continue;
+                }
+                // 同一key只发最后一次
+                peer.buffer.remove(event.key);
+                peer.buffer.put(event.key, event);
+                if (DEFAULT_BUFFER_KEYS < peer.buffer.size()) {
+                    peer.buffer.clear();
+                    this.resync(peer);
+                } else if (1 == peer.buffer.size()) {
+                    peer.buffer.notifyAll();
+                }
+            }
+        }
+    }
+
+    /**
+     * 标记需要CLEAR并唤醒发送线程，缓冲为空时也在退避结束后单独发出CLEAR，需持有peer.buffer
+     *
+     * @param peer peer
+     */
+    private void resync(final Peer<K, V> peer) {
+        if (!peer.resync) {
+            peer.resync = true;
+            peer.buffer.notifyAll();
+        }
+    }
+
+    /**
+     * 接收peer连接
+     */
+    private void accept() {
+        while (this.running) {
+            try {
+                final Socket socket = this.serverSocket.accept();
+                synchronized (this.inbound) {
+                    this.inbound.add(socket);
+                }
+                this.daemon(() -> this.receive(socket), "map-cache-bus-receiver-" + socket.getRemoteSocketAddress());
+            } catch (Throwable t) {
+                if (this.running) {
+                    t.printStackTrace();
+                }
+            }
+        }
+    }
+
+    /**
+     * 读取帧并应用到本地
+     *
+     * @param socket socket
+     */
+    private void receive(final Socket socket) {
+        try (DataInputStream dis = new DataInputStream(new BufferedInputStream(socket.getInputStream(), BUFFER_SIZE))) {
+            while (this.running) {
+                final int count = dis.readInt();
+                if (0 > count || DEFAULT_BATCH_SIZE + 1 < count) {
+                    throw new IOException("Invalid record count " + count + " from " + socket.getRemoteSocketAddress() + "...");
+                }
+                APPLYING.set(Boolean.TRUE);
+                try {
+                    for (int i = 0; i < count; i++) {
+                        this.apply(dis);
+                    }
+                } finally {
+                    APPLYING.remove();
+                }
+            }
+        } catch (EOFException e) {
+            // peer 关闭连接
+        } catch (Throwable t) {
+            if (this.running) {
+                t.printStackTrace();
+            }
+        } finally {
+            synchronized (this.inbound) {
+                this.inbound.remove(socket);
+            }
+            Io.closeableClose(socket);
+        }
+    }
+
+    private void apply(final DataInputStream dis) throws IOException {
+        final byte op = dis.readByte();
+        final long expireTime = dis.readLong();
+        final byte[] key = new byte[checkLength(dis.readInt())];
+        dis.readFully(key);
+        final byte[] value = new byte[checkLength(dis.readInt())];
+        dis.readFully(value);
+
+        if (OP_CLEAR == op) {
+            // 发送方丢弃过事件，本地缓存可能已过时
+            this.cache.clear();
+            return;
+        }
+        final K k = this.keyCodec.decode(key);
+        final long now = System.currentTimeMillis();
+        if (OP_PUT == op && null != this.valueCodec && expireTime > now) {
+            this.cache.put(k, new MapCache.Node<>(k, this.valueCodec.decode(value), expireTime - now));
+        } else {
+            this.cache.remove(k);
+        }
+    }
+
+    private static int checkLength(final int length) throws IOException {
+        if (0 > length || MAX_RECORD_LENGTH < length) {
+            throw new IOException("Invalid record length " + length + "...");
+        }
+        return length;
+    }
+
+    /**
+     * 一个peer的发送线程：等待缓冲非空或退避结束后有待发的CLEAR，再等待DEFAULT_BATCH_TIME合并后整批取出发送
+     *
+     * @param peer peer
+     */
+    private void send(final Peer<K, V> peer) {
+        final List<Event<K, V>> batch = new ArrayList<>();
+        while (this.running) {
+            final boolean resync;
+            try {
+                synchronized (peer.buffer) {
+                    for (; ; ) {
+                        if (!peer.buffer.isEmpty()) {
+                            break;
+                        }
+                        if (!peer.resync) {
+                            peer.buffer.wait();
+                            continue;
+                        }
+                        final long delay = peer.retryTime - System.currentTimeMillis();
+                        if (0L >= delay) {
+                            break;
+                        }
+                        peer.buffer.wait(delay);
+                    }
+                }
+                Thread.sleep(DEFAULT_BATCH_TIME);
+                synchronized (peer.buffer) {
+                    final Iterator<Event<K, V>> iterator = peer.buffer.values().iterator();
+                    while (iterator.hasNext() && DEFAULT_BATCH_SIZE > batch.size()) {
+                        batch.add(iterator.next());
+                        iterator.remove();
+                    }
+                    resync = peer.resync;
+                    peer.resync = false;
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            try {
+                this.send(peer, batch, resync);
+                peer.backoff = 0L;
+            } catch (Throwable t) {
+                // peer 不可达时丢弃本批并退避，重连后先CLEAR；只关socket，关dos会再flush一次
+                Io.closeableClose(peer.socket);
+                peer.socket = null;
+                peer.dos = null;
+                peer.backoff = Math.min(MAX_BACKOFF, Math.max(MIN_BACKOFF, peer.backoff << 1));
+                synchronized (peer.buffer) {
+                    peer.buffer.clear();
+                    peer.resync = true;
+                    peer.retryTime = System.currentTimeMillis() + peer.backoff;
+                }
+                if (!(t instanceof IOException)) {
+                    t.printStackTrace();
+                }
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    private void send(final Peer<K, V> peer, final List<Event<K, V>> batch, final boolean resync) throws IOException {
+        if (null == peer.socket || peer.socket.isClosed()) {
+            final Socket socket = new Socket();
+            try {
+                socket.setTcpNoDelay(true);
+                socket.connect(new InetSocketAddress(peer.host, peer.port), CONNECT_TIMEOUT);
+                peer.dos = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream(), BUFFER_SIZE));
+            } catch (IOException e) {
+                Io.closeableClose(socket);
+                throw e;
+            }
+            peer.socket = socket;
+        }
+        final DataOutputStream dos = peer.dos;
+        dos.writeInt(batch.size() + (resync ? 1 : 0));
+        if (resync) {
+            MapCacheSnapshot.writeRecord(dos, OP_CLEAR, 0L, new byte[0], new byte[0]);
+        }
+        for (Event<K, V> event : batch) {
+            final byte[] key = this.keyCodec.encode(event.key);
+            if (MAX_RECORD_LENGTH < key.length) {
+                // 对端无法接收该key，只能清空
+                MapCacheSnapshot.writeRecord(dos, OP_CLEAR, 0L, new byte[0], new byte[0]);
+                continue;
+            }
+            final byte[] value = OP_PUT == event.op ? this.valueCodec.encode(event.value) : new byte[0];
+            if (MAX_RECORD_LENGTH < value.length) {
+                MapCacheSnapshot.writeRecord(dos, OP_INVALIDATE, 0L, key, new byte[0]);
+            } else {
+                MapCacheSnapshot.writeRecord(dos, event.op, event.expireTime, key, value);
+            }
+        }
+        dos.flush();
+    }
+
+    private Thread daemon(final Runnable runnable, final String name) {
+        final Thread thread = new Thread(runnable, name);
+        thread.setDaemon(true);
+        thread.start();
+        return thread;
+    }
+}
@@ -0,0 +1,75 @@
+package com.xcoder.utilities.common;
+
+import java.util.Map;
+
+/**
+ * MapCache JMX 视图，由MapCacheMonitor注册
+ *
+ * @author chuck lee
+ */
+public interface MapCacheMXBean {
+
+    long getHitCount();
+
+    long getMissCount();
+
+    double getHitRate();
+
+    long getLoadSuccessCount();
+
+    long getLoadFailureCount();
+
+    /**
+     * 平均加载耗时
+     *
+     * @return millis
+     */
+    double getAverageLoadMillis();
+
+    /**
+     * 按原因统计的移除数
+     *
+     * @return cause -&gt; count
+     */
+    Map<String, Long> getRemovalCounts();
+
+    long getEvictionCount();
+
+    long getSize();
+
+    long getWeightedSize();
+
+    long getCleanerRunCount();
+
+    /**
+     * 清理线程单次持锁处理平均耗时
+     *
+     * @return micros
+     */
+    double getCleanerAverageMicros();
+
+    long getCleanerMaxMicros();
+
+    double getAverageExpireLagMillis();
+
+    long getMaxExpireLagMillis();
+
+    /**
+     * 热点key
+     *
+     * @return key -&gt; 估计访问次数
+     */
+    Map<String, Long> getHotKeys();
+
+    /**
+     * 热点key计数的误差上界
+     *
+     * @return key -&gt; error
+     */
+    Map<String, Long> getHotKeyErrors();
+
+    /**
+     * 清空热点key和峰值
+     */
+    void resetPeaks();
+}
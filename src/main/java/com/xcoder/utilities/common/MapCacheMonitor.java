@@ -0,0 +1,189 @@
+package com.xcoder.utilities.common;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * MapCache JMX 注册
+ * 每次读取属性都取一次统计快照；ObjectName 为 com.xcoder.utilities:type=MapCache,name=&lt;name&gt;
+ *
+ * @author chuck lee
+ */
+public class MapCacheMonitor implements MapCacheMXBean, AutoCloseable {
+
+    public static final String DOMAIN = "com.xcoder.utilities";
+
+    private final Supplier<MapCacheStats> stats;
+
+    private final Runnable resetPeaks;
+
+    private final ObjectName objectName;
+
+    public MapCacheMonitor(String name, MapCache<?, ?> cache) {
+        this(name, cache::stats, cache::resetPeaks);
+    }
+
+    public MapCacheMonitor(String name, ShardedMapCache<?, ?> cache) {
+        this(name, cache::stats, cache::resetPeaks);
+    }
+
+    /**
+     * Constructor
+     *
+     * @param name       name
+     * @param stats      统计快照
+     * @param resetPeaks 清空峰值
+     */
+    public MapCacheMonitor(String name, Supplier<MapCacheStats> stats, Runnable resetPeaks) {
+        MixedUtensil.objectsNullPointerException(name, stats, resetPeaks);
+        this.stats = stats;
+        this.resetPeaks = resetPeaks;
+        try {
+            this.objectName = new ObjectName(DOMAIN + ":type=MapCache,name=" + ObjectName.quote(name));
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * 注册到platform MBeanServer，同名已存在时替换
+     */
+    public void register() {
+        final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            if (server.isRegistered(this.objectName)) {
+                server.unregisterMBean(this.objectName);
+            }
+            server.registerMBean(this, this.objectName);
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * 注销
+     */
+    @Override
+    public void close() {
+        final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            if (server.isRegistered(this.objectName)) {
+                server.unregisterMBean(this.objectName);
+            }
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
+
+    public ObjectName getObjectName() {
+        return objectName;
+    }
+
+    @Override
+    public long getHitCount() {
+        return this.stats.get().getHitCount();
+    }
+
+    @Override
+    public long getMissCount() {
+        return this.stats.get().getMissCount();
+    }
+
+    @Override
+    public double getHitRate() {
+        return this.stats.get().getHitRate();
+    }
+
+    @Override
+    public long getLoadSuccessCount() {
+        return this.stats.get().getLoadSuccessCount();
+    }
+
+    @Override
+    public long getLoadFailureCount() {
+        return this.stats.get().getLoadFailureCount();
+    }
+
+    @Override
+    public double getAverageLoadMillis() {
+        return this.stats.get().getAverageLoadNanos() / TimeUnit.MILLISECONDS.toNanos(1L);
+    }
+
+    @Override
+    public Map<String, Long> getRemovalCounts() {
+        final MapCacheStats stats = this.stats.get();
+        final Map<String, Long> counts = new LinkedHashMap<>();
+        for (MapCache.RemovalCause cause : MapCache.RemovalCause.values()) {
+            counts.put(cause.name(), stats.getRemovalCount(cause));
+        }
+        return counts;
+    }
+
+    @Override
+    public long getEvictionCount() {
+        return this.stats.get().getEvictionCount();
+    }
+
+    @Override
+    public long getSize() {
+        return this.stats.get().getSize();
+    }
+
+    @Override
+    public long getWeightedSize() {
+        return this.stats.get().getWeightedSize();
+    }
+
+    @Override
+    public long getCleanerRunCount() {
+        return this.stats.get().getCleanerRunCount();
+    }
+
+    @Override
+    public double getCleanerAverageMicros() {
+        return this.stats.get().getCleanerAverageNanos() / TimeUnit.MICROSECONDS.toNanos(1L);
+    }
+
+    @Override
+    public long getCleanerMaxMicros() {
+        return TimeUnit.NANOSECONDS.toMicros(this.stats.get().getCleanerMaxNanos());
+    }
+
+    @Override
+    public double getAverageExpireLagMillis() {
+        return this.stats.get().getAverageExpireLag();
+    }
+
+    @Override
+    public long getMaxExpireLagMillis() {
+        return this.stats.get().getMaxExpireLag();
+    }
+
+    @Override
+    public Map<String, Long> getHotKeys() {
+        final Map<String, Long> hotKeys = new LinkedHashMap<>();
+        for (Map.Entry<Object, Long> entry : this.stats.get().getHotKeys().entrySet()) {
+            hotKeys.put(String.valueOf(entry.getKey()), entry.getValue());
+        }
+        return hotKeys;
+    }
+
+    @Override
+    public Map<String, Long> getHotKeyErrors() {
+        final Map<String, Long> errors = new LinkedHashMap<>();
+        for (Map.Entry<Object, Long> entry : this.stats.get().getHotKeyErrors().entrySet()) {
+            errors.put(String.valueOf(entry.getKey()), entry.getValue());
+        }
+        return errors;
+    }
+
+    @Override
+    public void resetPeaks() {
+        this.resetPeaks.run();
+    }
+}
@@ -0,0 +1,462 @@
+package com.xcoder.utilities.common;
+
+import com.alibaba.fastjson.JSON;
+import com.xcoder.utilities.io.Io;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * MapCache 持久化
+ * 周期性把未过期节点写入二进制快照，快照之间的put/remove追加到write log；
+ * 写线程只把记录放入有界队列，由快照线程(run)编码写入，队列满时写线程自己写入；
+ * 启动时按 快照 -&gt; 上一段log -&gt; 当前log 顺序内存映射回放，过期时间为绝对时间，剩余TTL保持不变
+ * <p>
+ * 记录格式：[byte op][long expireTime][int keyLength][key][int valueLength][value]
+ *
+ * @author chuck lee
+ */
+public class MapCacheSnapshot<K, V> implements Runnable, AutoCloseable {
+
+    /**
+     * 默认快照间隔
+     */
+    public static final Long DEFAULT_SNAPSHOT_TIME = 5L * 60L * 1000L;
+
+    /**
+     * write log 刷盘间隔
+     */
+    public static final Long DEFAULT_FLUSH_TIME = 1000L;
+
+    private static final String SNAPSHOT_FILE = "snapshot.bin";
+
+    private static final String SNAPSHOT_TEMP_FILE = "snapshot.bin.tmp";
+
+    private static final String LOG_FILE = "write.log";
+
+    private static final String ROTATED_LOG_FILE = "write.log.1";
+
+    private static final byte OP_PUT = 1;
+
+    private static final byte OP_REMOVE = 2;
+
+    /**
+     * 回放时每次映射的最大窗口
+     */
+    private static final long MAP_WINDOW = 1L << 30;
+
+    /**
+     * op + expireTime + keyLength + valueLength
+     */
+    private static final int RECORD_HEADER = 1 + 8 + 4 + 4;
+
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    /**
+     * 待写入记录队列容量
+     */
+    private static final int QUEUE_CAPACITY = 1 << 13;
+
+    /**
+     * Key/Value 编解码
+     */
+    public interface Codec<T> {
+        /**
+         * 编码
+         *
+         * @param t t
+         * @return bytes
+         * @throws IOException IOException
+         */
+        byte[] encode(T t) throws IOException;
+
+        /**
+         * 解码
+         *
+         * @param bytes bytes
+         * @return t
+         * @throws IOException IOException
+         */
+        T decode(byte[] bytes) throws IOException;
+    }
+
+    /**
+     * UTF-8 字符串编解码
+     */
+    public static final Codec<String> STRING_CODEC = new Codec<String>() {
+        @Override
+        public byte[] encode(String s) {
+            return s.getBytes(StandardCharsets.UTF_8);
+        }
+
+        @Override
+        public String decode(byte[] bytes) {
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+    };
+
+    /**
+     * fastjson 编解码
+     *
+     * @param type type
+     * @param <T>  T
+     * @return Codec
+     */
+    public static <T> Codec<T> jsonCodec(final Class<T> type) {
+        return new Codec<T>() {
+            @Override
+            public byte[] encode(T t) {
+                return JSON.toJSONBytes(t);
+            }
+
+            @Override
+            public T decode(byte[] bytes) {
+                return JSON.parseObject(bytes, type);
+            }
+        };
+    }
+
+    private final MapCache<K, V> cache;
+
+    private final File directory;
+
+    private final Codec<K> keyCodec;
+
+    private final Codec<V> valueCodec;
+
+    private final long snapshotTime;
+
+    private final MapCache.WriteListener<K, V> writeListener;
+
+    private final MapCache.RemovalListener<K, V> removalListener;
+
+    /**
+     * 快照串行执行
+     */
+    private final Object snapshotMutex = new Object();
+
+    /**
+     * 待写入write log的记录
+     */
+    private final BlockingQueue<Record<K, V>> records = new LinkedBlockingQueue<>(QUEUE_CAPACITY);
+
+    /**
+     * 当前write log，由this同步
+     */
+    private DataOutputStream log;
+
+    /**
+     * Constructor，先回放已有快照和log，再开始记录
+     *
+     * @param cache        cache
+     * @param directory    快照目录
+     * @param keyCodec     keyCodec
+     * @param valueCodec   valueCodec
+     * @param snapshotTime 快照间隔
+     * @throws IOException IOException
+     */
+    public MapCacheSnapshot(MapCache<K, V> cache, String directory, Codec<K> keyCodec
+            , Codec<V> valueCodec, long snapshotTime) throws IOException {
+        MixedUtensil.objectsNullPointerException(cache, directory, keyCodec, valueCodec);
+        this.cache = cache;
+        this.directory = new File(directory);
+        this.keyCodec = keyCodec;
+        this.valueCodec = valueCodec;
+        this.snapshotTime = snapshotTime;
+        if (!this.directory.isDirectory() && !this.directory.mkdirs()) {
+            throw new IOException("Can not create snapshot directory " + directory);
+        }
+
+        this.recover();
+        this.log = this.openLog();
+        this.writeListener = (key, value, expireTime) -> this.append(OP_PUT, key, value, expireTime);
+        this.removalListener = (key, value, cause) -> {
+            // 覆盖由新的put记录，过期由expireTime决定，无需记录
+            if (MapCache.RemovalCause.EXPLICIT == cause || MapCache.RemovalCause.SIZE == cause
+                    || MapCache.RemovalCause.CLEARED == cause) {
+                this.append(OP_REMOVE, key, null, 0L);
+            }
+        };
+        cache.addWriteListener(this.writeListener);
+        cache.addRemovalListener(this.removalListener);
+    }
+
+    /**
+     * 写快照：先切换log，再导出未过期节点，原子替换旧快照后删除切换出的log
+     *
+     * @throws IOException IOException
+     */
+    public void snapshot() throws IOException {
+        synchronized (this.snapshotMutex) {
+            this.doSnapshot();
+        }
+    }
+
+    private void doSnapshot() throws IOException {
+        synchronized (this) {
+            this.drain();
+            this.log.flush();
+            Io.closeableClose(this.log);
+            try {
+                this.rotate();
+            } finally {
+                // 切换失败时当前log仍在(或已接到上一段log之后)，重新打开继续追加，不丢后续记录
+                this.log = this.openLog();
+            }
+        }
+
+        final File temp = this.file(SNAPSHOT_TEMP_FILE);
+        try (FileOutputStream fos = new FileOutputStream(temp);
+             DataOutputStream dos = new DataOutputStream(new BufferedOutputStream(fos, BUFFER_SIZE))) {
+            for (Map.Entry<K, MapCache.Node<K, V>> entry : this.cache.entrySet()) {
+                final MapCache.Node<K, V> node = entry.getValue();
+                if (node.isExpire()) {
+                    continue;
+                }
+                writeRecord(dos, OP_PUT, node.getExpireTime(), this.keyCodec.encode(node.getKey())
+                        , this.valueCodec.encode(node.getValue()));
+            }
+            dos.flush();
+            fos.getFD().sync();
+        }
+        Files.move(temp.toPath(), this.file(SNAPSHOT_FILE).toPath()
+                , StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        Files.deleteIfExists(this.file(ROTATED_LOG_FILE).toPath());
+    }
+
+    /**
+     * 上一次快照失败时切换出的log还在，其中的记录未进入快照，把当前log接在其后而不是覆盖；
+     * 复制失败时截掉已接上的部分，避免之后追加的记录接在半条记录后面
+     *
+     * @throws IOException IOException
+     */
+    private void rotate() throws IOException {
+        final File current = this.file(LOG_FILE);
+        final File rotated = this.file(ROTATED_LOG_FILE);
+        if (!rotated.isFile()) {
+            Files.move(current.toPath(), rotated.toPath());
+            return;
+        }
+        final long length = rotated.length();
+        try (FileOutputStream fos = new FileOutputStream(rotated, true)) {
+            Files.copy(current.toPath(), fos);
+            fos.getFD().sync();
+        } catch (IOException e) {
+            try (RandomAccessFile raf = new RandomAccessFile(rotated, "rw")) {
+                raf.setLength(length);
+            } catch (IOException t) {
+                e.addSuppressed(t);
+            }
+            throw e;
+        }
+        Files.delete(current.toPath());
+    }
+
+    /**
+     * 写入队列中的记录并刷盘write log
+     *
+     * @throws IOException IOException
+     */
+    public synchronized void flush() throws IOException {
+        this.drain();
+        this.log.flush();
+    }
+
+    /**
+     * 周期刷盘与快照
+     */
+    @Override
+    public final void run() {
+        long lastSnapshot = System.currentTimeMillis();
+        for (; !Thread.currentThread().isInterrupted(); ) {
+            LockSupport.parkNanos(this, TimeUnit.MILLISECONDS.toNanos(DEFAULT_FLUSH_TIME));
+            try {
+                if (this.snapshotTime <= System.currentTimeMillis() - lastSnapshot) {
+                    this.snapshot();
+                    lastSnapshot = System.currentTimeMillis();
+                } else {
+                    this.flush();
+                }
+            } catch (Throwable t) {
+                t.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * 停止记录，写最后一次快照
+     *
+     * @throws IOException IOException
+     */
+    @Override
+    public void close() throws IOException {
+        this.cache.removeWriteListener(this.writeListener);
+        this.cache.removeRemovalListener(this.removalListener);
+        // snapshot先写入队列中的记录
+        this.snapshot();
+        synchronized (this) {
+            Io.closeableClose(this.log);
+        }
+    }
+
+    /**
+     * 回放 快照 -&gt; 上一段log -&gt; 当前log
+     *
+     * @throws IOException IOException
+     */
+    private void recover() throws IOException {
+        final long now = System.currentTimeMillis();
+        for (String name : new String[]{SNAPSHOT_FILE, ROTATED_LOG_FILE, LOG_FILE}) {
+            final File file = this.file(name);
+            if (file.isFile()) {
+                this.replay(file, now);
+            }
+        }
+    }
+
+    /**
+     * 按窗口内存映射回放，末尾不完整的记录(写入中宕机)被截掉，之后追加的记录才能被回放
+     *
+     * @param file file
+     * @param now  now
+     * @throws IOException IOException
+     */
+    private void replay(final File file, final long now) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw");
+             FileChannel channel = raf.getChannel()) {
+            final long size = channel.size();
+            long position = 0L;
+            while (position < size) {
+                final MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY
+                        , position, Math.min(MAP_WINDOW, size - position));
+                final int consumed = this.replay(buffer, now);
+                if (0 == consumed) {
+                    // 当前窗口内没有完整记录
+                    break;
+                }
+                position += consumed;
+            }
+            if (position < size) {
+                channel.truncate(position);
+            }
+        }
+    }
+
+    /**
+     * 回放窗口内的完整记录
+     *
+     * @param buffer buffer
+     * @param now    now
+     * @return 已消费字节数
+     * @throws IOException IOException
+     */
+    private int replay(final ByteBuffer buffer, final long now) throws IOException {
+        int consumed = 0;
+        while (RECORD_HEADER <= buffer.remaining()) {
+            try {
+                final byte op = buffer.get();
+                final long expireTime = buffer.getLong();
+                final byte[] key = new byte[buffer.getInt()];
+                buffer.get(key);
+                final byte[] value = new byte[buffer.getInt()];
+                buffer.get(value);
+                this.apply(op, expireTime, key, value, now);
+                consumed = buffer.position();
+            } catch (BufferUnderflowException | NegativeArraySizeException e) {
+                break;
+            }
+        }
+        return consumed;
+    }
+
+    private void apply(final byte op, final long expireTime, final byte[] key, final byte[] value
+            , final long now) throws IOException {
+        final K k = this.keyCodec.decode(key);
+        if (OP_REMOVE == op || expireTime <= now) {
+            this.cache.remove(k);
+            return;
+        }
+        this.cache.put(k, new MapCache.Node<>(k, this.valueCodec.decode(value), expireTime - now));
+    }
+
+    /**
+     * 记录放入队列，不在写线程上编码；队列满时写线程写入积压后重试
+     */
+    private void append(final byte op, final K key, final V value, final long expireTime) {
+        final Record<K, V> record = new Record<>(op, key, value, expireTime);
+        while (!this.records.offer(record)) {
+            synchronized (this) {
+                this.drain();
+            }
+        }
+    }
+
+    /**
+     * 编码队列中的记录写入write log，需持有this
+     */
+    private void drain() {
+        for (Record<K, V> record = this.records.poll(); null != record; record = this.records.poll()) {
+            try {
+                final byte[] v = null == record.value ? new byte[0] : this.valueCodec.encode(record.value);
+                writeRecord(this.log, record.op, record.expireTime, this.keyCodec.encode(record.key), v);
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    private DataOutputStream openLog() throws IOException {
+        return new DataOutputStream(new BufferedOutputStream(new FileOutputStream(this.file(LOG_FILE), true), BUFFER_SIZE));
+    }
+
+    private File file(final String name) {
+        return new File(this.directory, name);
+    }
+
+    /**
+     * 待写入的记录
+     */
+    private static final class Record<K, V> {
+
+        private final byte op;
+
+        private final K key;
+
+        private final V value;
+
+        private final long expireTime;
+
+        private Record(byte op, K key, V value, long expireTime) {
+            this.op = op;
+            this.key = key;
+            this.value = value;
+            this.expireTime = expireTime;
+        }
+    }
+
+    static void writeRecord(final DataOutputStream dos, final byte op, final long expireTime
+            , final byte[] key, final byte[] value) throws IOException {
+        dos.writeByte(op);
+        dos.writeLong(expireTime);
+        dos.writeInt(key.length);
+        dos.write(key);
+        dos.writeInt(value.length);
+        dos.write(value);
+    }
+}
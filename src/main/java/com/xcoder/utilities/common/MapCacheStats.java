@@ -0,0 +1,262 @@
+package com.xcoder.utilities.common;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * MapCache 统计快照，不可变，取值时各计数之间不保证一致
+ *
+ * @author chuck lee
+ */
+public final class MapCacheStats {
+
+    private final long hitCount;
+
+    private final long missCount;
+
+    private final long loadSuccessCount;
+
+    private final long loadFailureCount;
+
+    private final long totalLoadNanos;
+
+    /**
+     * 按 MapCache.RemovalCause.ordinal() 索引
+     */
+    private final long[] removalCounts;
+
+    private final long size;
+
+    private final long weightedSize;
+
+    private final long cleanerRunCount;
+
+    private final long cleanerTotalNanos;
+
+    private final long cleanerMaxNanos;
+
+    private final long expireCount;
+
+    private final long totalExpireLag;
+
+    private final long maxExpireLag;
+
+    private final Map<Object, Long> hotKeys;
+
+    /**
+     * 热点key计数的误差上界
+     */
+    private final Map<Object, Long> hotKeyErrors;
+
+    MapCacheStats(long hitCount, long missCount, long loadSuccessCount, long loadFailureCount, long totalLoadNanos
+            , long[] removalCounts, long size, long weightedSize, long cleanerRunCount, long cleanerTotalNanos
+            , long cleanerMaxNanos, long expireCount, long totalExpireLag, long maxExpireLag, Map<Object, Long> hotKeys
+            , Map<Object, Long> hotKeyErrors) {
+        this.hitCount = hitCount;
+        this.missCount = missCount;
+        this.loadSuccessCount = loadSuccessCount;
+        this.loadFailureCount = loadFailureCount;
+        this.totalLoadNanos = totalLoadNanos;
+        this.removalCounts = removalCounts;
+        this.size = size;
+        this.weightedSize = weightedSize;
+        this.cleanerRunCount = cleanerRunCount;
+        this.cleanerTotalNanos = cleanerTotalNanos;
+        this.cleanerMaxNanos = cleanerMaxNanos;
+        this.expireCount = expireCount;
+        this.totalExpireLag = totalExpireLag;
+        this.maxExpireLag = maxExpireLag;
+        this.hotKeys = Collections.unmodifiableMap(hotKeys);
+        this.hotKeyErrors = Collections.unmodifiableMap(hotKeyErrors);
+    }
+
+    /**
+     * 合并多个分片的统计，热点key按计数重新取前k个
+     *
+     * @param other other
+     * @param k     热点key数
+     * @return MapCacheStats
+     */
+    public MapCacheStats plus(MapCacheStats other, int k) {
+        final long[] counts = new long[this.removalCounts.length];
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] = this.removalCounts[i] + other.removalCounts[i];
+        }
+        final List<Map.Entry<Object, Long>> entries = new ArrayList<>(this.hotKeys.entrySet());
+        entries.addAll(other.hotKeys.entrySet());
+        entries.sort((a, b) -> Long.compare(b.getValue(), a.getValue()));
+        final Map<Object, Long> hot = new LinkedHashMap<>();
+        final Map<Object, Long> errors = new LinkedHashMap<>();
+        for (int i = 0; i < k && i < entries.size(); i++) {
+            final Object key = entries.get(i).getKey();
+            hot.put(key, entries.get(i).getValue());
+            final Long error = this.hotKeys.containsKey(key) ? this.hotKeyErrors.get(key) : other.hotKeyErrors.get(key);
+            errors.put(key, null == error ? 0L : error);
+        }
+        return new MapCacheStats(this.hitCount + other.hitCount, this.missCount + other.missCount
+                , this.loadSuccessCount + other.loadSuccessCount, this.loadFailureCount + other.loadFailureCount
+                , this.totalLoadNanos + other.totalLoadNanos, counts, this.size + other.size
+                , this.weightedSize + other.weightedSize, this.cleanerRunCount + other.cleanerRunCount
+                , this.cleanerTotalNanos + other.cleanerTotalNanos, Math.max(this.cleanerMaxNanos, other.cleanerMaxNanos)
+                , this.expireCount + other.expireCount, this.totalExpireLag + other.totalExpireLag
+                , Math.max(this.maxExpireLag, other.maxExpireLag), hot, errors);
+    }
+
+    public long getHitCount() {
+        return hitCount;
+    }
+
+    public long getMissCount() {
+        return missCount;
+    }
+
+    public long getRequestCount() {
+        return hitCount + missCount;
+    }
+
+    /**
+     * 命中率，无请求时为1
+     *
+     * @return hitRate
+     */
+    public double getHitRate() {
+        final long requestCount = this.getRequestCount();
+        return 0L == requestCount ? 1.0D : (double) hitCount / requestCount;
+    }
+
+    public long getLoadSuccessCount() {
+        return loadSuccessCount;
+    }
+
+    public long getLoadFailureCount() {
+        return loadFailureCount;
+    }
+
+    public long getTotalLoadNanos() {
+        return totalLoadNanos;
+    }
+
+    /**
+     * 平均加载耗时
+     *
+     * @return nanos
+     */
+    public double getAverageLoadNanos() {
+        final long loadCount = loadSuccessCount + loadFailureCount;
+        return 0L == loadCount ? 0.0D : (double) totalLoadNanos / loadCount;
+    }
+
+    /**
+     * 按原因统计的移除数
+     *
+     * @param cause cause
+     * @return count
+     */
+    public long getRemovalCount(MapCache.RemovalCause cause) {
+        return removalCounts[cause.ordinal()];
+    }
+
+    /**
+     * 容量淘汰数
+     *
+     * @return count
+     */
+    public long getEvictionCount() {
+        return this.getRemovalCount(MapCache.RemovalCause.SIZE);
+    }
+
+    public long getSize() {
+        return size;
+    }
+
+    public long getWeightedSize() {
+        return weightedSize;
+    }
+
+    /**
+     * 清理线程处理次数(每次推进时间轮)
+     *
+     * @return count
+     */
+    public long getCleanerRunCount() {
+        return cleanerRunCount;
+    }
+
+    /**
+     * 清理线程单次持锁处理的平均耗时
+     *
+     * @return nanos
+     */
+    public double getCleanerAverageNanos() {
+        return 0L == cleanerRunCount ? 0.0D : (double) cleanerTotalNanos / cleanerRunCount;
+    }
+
+    public long getCleanerMaxNanos() {
+        return cleanerMaxNanos;
+    }
+
+    /**
+     * 时间轮过期的节点数
+     *
+     * @return count
+     */
+    public long getExpireCount() {
+        return expireCount;
+    }
+
+    /**
+     * 节点到期到被时间轮移除的平均延迟
+     *
+     * @return millis
+     */
+    public double getAverageExpireLag() {
+        return 0L == expireCount ? 0.0D : (double) totalExpireLag / expireCount;
+    }
+
+    public long getMaxExpireLag() {
+        return maxExpireLag;
+    }
+
+    /**
+     * 热点key，按估计访问次数降序，未开启统计时为空
+     *
+     * @return key -&gt; count
+     */
+    public Map<Object, Long> getHotKeys() {
+        return hotKeys;
+    }
+
+    /**
+     * 热点key计数的误差上界(Space-Saving 替换时继承的计数)，真实访问次数在 [count - error, count]
+     *
+     * @return key -&gt; error
+     */
+    public Map<Object, Long> getHotKeyErrors() {
+        return hotKeyErrors;
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder builder = new StringBuilder("MapCacheStats{hitCount=").append(hitCount)
+                .append(", missCount=").append(missCount)
+                .append(", hitRate=").append(this.getHitRate())
+                .append(", loadSuccessCount=").append(loadSuccessCount)
+                .append(", loadFailureCount=").append(loadFailureCount)
+                .append(", averageLoadNanos=").append(this.getAverageLoadNanos());
+        for (MapCache.RemovalCause cause : MapCache.RemovalCause.values()) {
+            builder.append(", ").append(cause.name().toLowerCase()).append("Count=").append(this.getRemovalCount(cause));
+        }
+        return builder.append(", size=").append(size)
+                .append(", weightedSize=").append(weightedSize)
+                .append(", cleanerAverageNanos=").append(this.getCleanerAverageNanos())
+                .append(", cleanerMaxNanos=").append(cleanerMaxNanos)
+                .append(", averageExpireLag=").append(this.getAverageExpireLag())
+                .append(", maxExpireLag=").append(maxExpireLag)
+                .append(", hotKeys=").append(hotKeys)
+                .append(", hotKeyErrors=").append(hotKeyErrors)
+                .append('}').toString();
+    }
+}
@@ -0,0 +1,197 @@
+package com.xcoder.utilities.common;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * MapCache write-behind
+ * put/remove 记录到待写表(同一key只保留最后一次)，由后台线程按批量大小或时间间隔批量写入ICacheStore；
+ * 只有remove(RemovalCause.EXPLICIT)会删除后端存储中的key；
+ * <b>clear()、过期和容量淘汰只清本地缓存，不影响后端存储</b>
+ *
+ * @author chuck lee
+ */
+public class MapCacheWriteBehind<K, V> implements AutoCloseable {
+
+    /**
+     * 默认批量大小
+     */
+    public static final Integer DEFAULT_BATCH_SIZE = 512;
+
+    /**
+     * 默认刷写间隔
+     */
+    public static final Long DEFAULT_FLUSH_TIME = 1000L;
+
+    /**
+     * 待写操作
+     */
+    private static final class Write<V> {
+        private final V value;
+
+        /**
+         * value == null 表示删除
+         */
+        private Write(V value) {
+            this.value = value;
+        }
+    }
+
+    private final MapCache<K, V> cache;
+
+    private final ICacheStore<K, V> store;
+
+    private final int batchSize;
+
+    /**
+     * 待写表，同一key的多次写合并
+     */
+    private final ConcurrentHashMap<K, Write<V>> pending = new ConcurrentHashMap<>();
+
+    /**
+     * 单线程执行，保证批次按顺序写入
+     */
+    private final ScheduledExecutorService executor;
+
+    /**
+     * 已提交按量触发的刷写
+     */
+    private final AtomicBoolean flushScheduled = new AtomicBoolean();
+
+    private final MapCache.WriteListener<K, V> writeListener;
+
+    private final MapCache.RemovalListener<K, V> removalListener;
+
+    public MapCacheWriteBehind(MapCache<K, V> cache, ICacheStore<K, V> store) {
+        this(cache, store, DEFAULT_BATCH_SIZE, DEFAULT_FLUSH_TIME);
+    }
+
+    /**
+     * Constructor
+     *
+     * @param cache     cache
+     * @param store     后端存储
+     * @param batchSize 待写数达到后立即刷写
+     * @param flushTime 刷写间隔
+     */
+    public MapCacheWriteBehind(MapCache<K, V> cache, ICacheStore<K, V> store, int batchSize, long flushTime) {
+        MixedUtensil.objectsNullPointerException(cache, store);
+        this.cache = cache;
+        this.store = store;
+        this.batchSize = Math.max(1, batchSize);
+        this.executor = Executors.newSingleThreadScheduledExecutor(r -> {
+            final Thread thread = new Thread(r, "map-cache-write-behind");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.executor.scheduleWithFixedDelay(this::flushQuietly, flushTime, flushTime, TimeUnit.MILLISECONDS);
+
+        this.writeListener = (key, value, expireTime) -> this.record(key, new Write<>(value));
+        this.removalListener = (key, value, cause) -> {
+            if (MapCache.RemovalCause.EXPLICIT == cause) {
+                this.record(key, new Write<>(null));
+            }
+        };
+        cache.addWriteListener(this.writeListener);
+        cache.addRemovalListener(this.removalListener);
+    }
+
+    /**
+     * 待写数
+     *
+     * @return size
+     */
+    public int getPendingCount() {
+        return this.pending.size();
+    }
+
+    /**
+     * 立即把当前待写表写入后端，失败的操作放回待写表(不覆盖更新的写)
+     *
+     * @throws Exception store异常
+     */
+    public synchronized void flush() throws Exception {
+        if (this.pending.isEmpty()) {
+            return;
+        }
+        final Map<K, V> writes = new HashMap<>();
+        final List<K> deletes = new ArrayList<>();
+        final Map<K, Write<V>> batch = new HashMap<>();
+        for (K key : this.pending.keySet()) {
+            final Write<V> write = this.pending.remove(key);
+            if (null == write) {
+                continue;
+            }
+            batch.put(key, write);
+            if (null == write.value) {
+                deletes.add(key);
+            } else {
+                writes.put(key, write.value);
+            }
+        }
+        try {
+            if (!writes.isEmpty()) {
+                this.store.writeAll(writes);
+            }
+            if (!deletes.isEmpty()) {
+                this.store.deleteAll(deletes);
+            }
+        } catch (Exception e) {
+            for (Map.Entry<K, Write<V>> entry : batch.entrySet()) {
+                this.pending.putIfAbsent(entry.getKey(), entry.getValue());
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * 停止记录并写入剩余待写，被中断时不再等待后台刷写，仍写入剩余待写并保留中断状态；
+     * store异常包装为RuntimeException抛出，失败的写仍在待写表中，可再调用flush重试
+     */
+    @Override
+    public void close() {
+        this.cache.removeWriteListener(this.writeListener);
+        this.cache.removeRemovalListener(this.removalListener);
+        this.executor.shutdown();
+        try {
+            this.executor.awaitTermination(DEFAULT_FLUSH_TIME, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        try {
+            this.flush();
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private void record(final K key, final Write<V> write) {
+        this.pending.put(key, write);
+        if (this.batchSize <= this.pending.size() && this.flushScheduled.compareAndSet(false, true)) {
+            try {
+                this.executor.execute(() -> {
+                    this.flushScheduled.set(false);
+                    this.flushQuietly();
+                });
+            } catch (RuntimeException e) {
+                // executor 已关闭，由close刷写
+                this.flushScheduled.set(false);
+            }
+        }
+    }
+
+    private void flushQuietly() {
+        try {
+            this.flush();
+        } catch (Throwable t) {
+            t.printStackTrace();
+        }
+    }
+}
@@ -0,0 +1,27 @@
+package com.xcoder.utilities.common;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 内存后端存储，测试或本地替身用
+ *
+ * @author chuck lee
+ */
+public class MemoryCacheStore<K, V> extends ConcurrentHashMap<K, V> implements ICacheStore<K, V> {
+
+    private static final long serialVersionUID = 1L;
+
+    @Override
+    public void writeAll(Map<K, V> entries) {
+        this.putAll(entries);
+    }
+
+    @Override
+    public void deleteAll(Collection<K> keys) {
+        for (K key : keys) {
+            this.remove(key);
+        }
+    }
+}
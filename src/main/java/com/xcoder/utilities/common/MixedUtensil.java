@@ -28,6 +28,11 @@ public class MixedUtensil implements IUniversal {
      */
     public static final int DEFAULT_STRING_BUFFER_CAPACITY = 100;
 
+    /**
+     * readInputStream 解码缓冲区大小，与BufferedReader默认值相同
+     */
+    private static final int READ_BUFFER_SIZE = 8192;
+
     /**
      * jdk8 推荐日期格式化工具类 immutable 线程安全
      * LocalDate 2010-12-03
@@ -320,7 +325,7 @@ public class MixedUtensil implements IUniversal {
     }
 
     /**
-     * Read InputStream to String
+     * Read InputStream to String, 去掉所有换行；需要保留换行或逐条处理时用RecordReader
      *
      * @param inputStream inputStream
      * @param charsetName charsetName
@@ -330,10 +335,19 @@ public class MixedUtensil implements IUniversal {
      */
     public static String readInputStream(final InputStream inputStream
             , final String charsetName, final int capacity) throws IOException {
-        try (final BufferedReader br = new BufferedReader(new InputStreamReader(inputStream, charsetName))) {
+        // 与逐行读取拼接的结果相同：边解码边去掉所有\r、\n，不再为每行创建String
+        try (final Reader reader = new InputStreamReader(inputStream, charsetName)) {
+            final char[] buffer = new char[READ_BUFFER_SIZE];
             final StringBuilder sb = new StringBuilder(capacity);
-            for (String line = br.readLine(); null != line; line = br.readLine()) {
-                sb.append(line);
+            for (int n = reader.read(buffer); -1 != n; n = reader.read(buffer)) {
+                int start = 0;
+                for (int i = 0; i < n; i++) {
+                    if ('\r' == buffer[i] || '\n' == buffer[i]) {
+                        sb.append(buffer, start, i - start);
+                        start = i + 1;
+                    }
+                }
+                sb.append(buffer, start, n - start);
             }
             final String rst = sb.toString();
             return rst;
@@ -0,0 +1,157 @@
+package com.xcoder.utilities.common;
+
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+
+/**
+ * Off-heap map cache
+ * 值存放在堆外slab(direct ByteBuffer 或内存映射文件)，堆上只保留MapCache索引，
+ * 过期、容量淘汰与MapCache一致，节点移除时归还slab块；
+ * 值的块级别没有空闲块时继续淘汰，直到有slab整块空出
+ *
+ * @author chuck lee
+ */
+public class OffHeapMapCache<K> implements Runnable, AutoCloseable {
+
+    /**
+     * 默认slab大小 16M
+     */
+    public static final Integer DEFAULT_SLAB_SIZE = 16 * 1024 * 1024;
+
+    /**
+     * 堆外存储
+     */
+    private final SlabAllocator allocator;
+
+    /**
+     * 堆上索引，权重为块大小
+     */
+    private final MapCache<K, SlabAllocator.Slot> index;
+
+    /**
+     * Constructor
+     *
+     * @param capacity 堆外最大字节数
+     * @throws IOException IOException
+     */
+    public OffHeapMapCache(long capacity) throws IOException {
+        this(capacity, DEFAULT_SLAB_SIZE, null);
+    }
+
+    /**
+     * Constructor
+     *
+     * @param capacity   堆外最大字节数，其中一个slab预留给碎片
+     * @param slabSize   slab大小，2的幂，单个值不能超过
+     * @param mappedFile 内存映射文件路径，null时使用direct ByteBuffer
+     * @throws IOException IOException
+     */
+    public OffHeapMapCache(long capacity, int slabSize, String mappedFile) throws IOException {
+        this.allocator = new SlabAllocator(slabSize, capacity, mappedFile);
+        // 预留一个slab给分级切块产生的碎片
+        final long maximumWeight = Math.max(slabSize, capacity - slabSize);
+        this.index = new MapCache<>(null, MapCache.DEFAULT_TICK_TIME, maximumWeight, (key, slot) -> slot.capacity);
+        this.index.addRemovalListener((key, slot, cause) -> this.allocator.free(slot));
+    }
+
+    /**
+     * 放入值
+     *
+     * @param key    key
+     * @param value  value
+     * @param expire 存活毫秒数
+     * @throws IOException IOException
+     */
+    public void put(K key, byte[] value, long expire) throws IOException {
+        MixedUtensil.objectsNullPointerException(key, value);
+        SlabAllocator.Slot slot = this.allocator.allocate(value);
+        if (null == slot) {
+            // 先处理积压的淘汰/过期，归还块后重试
+            this.index.cleanUp();
+            slot = this.allocator.allocate(value);
+        }
+        // 该级别仍没有空闲块时继续按淘汰顺序移除，直到空出的slab可以重新切块
+        while (null == slot) {
+            if (!this.index.evictOne()) {
+                throw new RuntimeException("Off-heap storage is full...");
+            }
+            slot = this.allocator.allocate(value);
+        }
+        this.index.put(key, slot, expire);
+    }
+
+    /**
+     * 取值
+     *
+     * @param key key
+     * @return 值的拷贝，不存在或已过期返回null
+     */
+    public byte[] get(Object key) {
+        final SlabAllocator.Slot slot = this.index.getValue(key);
+        return null == slot ? null : this.allocator.read(slot);
+    }
+
+    /**
+     * 放入字符串
+     *
+     * @param key     key
+     * @param value   value
+     * @param charset charset
+     * @param expire  存活毫秒数
+     * @throws IOException IOException
+     */
+    public void putString(K key, String value, String charset, long expire) throws IOException {
+        MixedUtensil.objectNullPointerException(value);
+        this.put(key, GzipUtensil.stringToByteArray(value, charset), expire);
+    }
+
+    /**
+     * 取字符串
+     *
+     * @param key     key
+     * @param charset charset
+     * @return String
+     * @throws UnsupportedEncodingException UnsupportedEncodingException
+     */
+    public String getString(Object key, String charset) throws UnsupportedEncodingException {
+        final byte[] bytes = this.get(key);
+        return null == bytes ? null : GzipUtensil.byteArrayToString(bytes, charset);
+    }
+
+    /**
+     * 移除
+     *
+     * @param key key
+     * @return 是否存在
+     */
+    public boolean remove(Object key) {
+        return null != this.index.remove(key);
+    }
+
+    public int size() {
+        return this.index.size();
+    }
+
+    /**
+     * 已申请的堆外字节数
+     *
+     * @return bytes
+     */
+    public long getReservedBytes() {
+        return this.allocator.reserved();
+    }
+
+    /**
+     * 索引清理线程
+     */
+    @Override
+    public final void run() {
+        this.index.run();
+    }
+
+    @Override
+    public void close() {
+        this.index.clear();
+        this.allocator.close();
+    }
+}
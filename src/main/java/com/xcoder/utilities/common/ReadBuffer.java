@@ -0,0 +1,62 @@
+package com.xcoder.utilities.common;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Consumer;
+
+/**
+ * 有损读缓冲，记录命中的节点，满了直接丢弃
+ * offer多线程，drain由持有MapCache eviction lock的线程执行
+ *
+ * @author chuck lee
+ */
+final class ReadBuffer {
+
+    private static final int BUFFER_SIZE = 256;
+
+    private static final int BUFFER_MASK = BUFFER_SIZE - 1;
+
+    private final AtomicReferenceArray<MapCache.Node<?, ?>> buffer = new AtomicReferenceArray<>(BUFFER_SIZE);
+
+    private final AtomicLong writeCounter = new AtomicLong();
+
+    private volatile long readCounter;
+
+    /**
+     * 记录读
+     *
+     * @param node node
+     * @return 缓冲区已满需要drain
+     */
+    boolean offer(final MapCache.Node<?, ?> node) {
+        final long w = this.writeCounter.get();
+        if (BUFFER_SIZE <= w - this.readCounter) {
+            return true;
+        }
+        if (this.writeCounter.compareAndSet(w, w + 1)) {
+            this.buffer.lazySet((int) (w & BUFFER_MASK), node);
+            return BUFFER_SIZE <= w + 1 - this.readCounter;
+        }
+        return false;
+    }
+
+    /**
+     * 取出已记录的节点
+     *
+     * @param consumer consumer
+     */
+    void drain(final Consumer<MapCache.Node<?, ?>> consumer) {
+        long r = this.readCounter;
+        for (final long w = this.writeCounter.get(); r < w; r++) {
+            final int index = (int) (r & BUFFER_MASK);
+            final MapCache.Node<?, ?> node = this.buffer.get(index);
+            if (null == node) {
+                // 写线程已占位但还未写入
+                break;
+            }
+            this.buffer.lazySet(index, null);
+            consumer.accept(node);
+        }
+        this.readCounter = r;
+    }
+}
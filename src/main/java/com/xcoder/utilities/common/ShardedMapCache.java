@@ -0,0 +1,233 @@
+package com.xcoder.utilities.common;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Sharded map cache
+ * 由N个独立的MapCache组成，每个分片有自己的时间轮、淘汰策略和清理线程，
+ * 过期处理和唤醒分散到多个核上
+ *
+ * @author chuck lee
+ */
+public class ShardedMapCache<K, V> implements AutoCloseable {
+
+    private final MapCache<K, V>[] shards;
+
+    private final int shardMask;
+
+    private final Thread[] cleaners;
+
+    public ShardedMapCache() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    public ShardedMapCache(int concurrencyLevel) {
+        this(concurrencyLevel, MapCache.DEFAULT_TICK_TIME, 0L, null);
+    }
+
+    /**
+     * Constructor
+     *
+     * @param concurrencyLevel 分片数，取不小于它的2的幂
+     * @param tickTime         时间轮tick时间
+     * @param maximumWeight    总最大权重，平均分到每个分片，&lt;= 0 不限制
+     * @param weigher          weigher
+     */
+    public ShardedMapCache(int concurrencyLevel, long tickTime, long maximumWeight
+            , MapCache.Weigher<? super K, ? super V> weigher) {
+        final int size = Integer.highestOneBit(Math.max(1, concurrencyLevel - 1)) << 1;
+        final long shardWeight = 0L < maximumWeight ? Math.max(1L, maximumWeight / size) : 0L;
+        // 泛型数组只能这样创建，元素都是MapCache<K, V>
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        final MapCache<K, V>[] shards = new MapCache[size];
+        for (int i = 0; i < size; i++) {
+            shards[i] = new MapCache<>(null, tickTime, shardWeight, weigher);
+        }
+        this.shards = shards;
+        this.shardMask = size - 1;
+        this.cleaners = new Thread[size];
+    }
+
+    /**
+     * 为每个分片启动daemon清理线程
+     */
+    public synchronized void start() {
+        for (int i = 0; i < this.shards.length; i++) {
+            if (null != this.cleaners[i] && this.cleaners[i].isAlive()) {
+                continue;
+            }
+            final Thread cleaner = new Thread(this.shards[i], "map-cache-cleaner-" + i);
+            cleaner.setDaemon(true);
+            cleaner.start();
+            this.cleaners[i] = cleaner;
+        }
+    }
+
+    /**
+     * 停止清理线程
+     */
+    @Override
+    public synchronized void close() {
+        for (int i = 0; i < this.cleaners.length; i++) {
+            if (null != this.cleaners[i]) {
+                this.cleaners[i].interrupt();
+                this.cleaners[i] = null;
+            }
+        }
+    }
+
+    /**
+     * key 所在分片
+     *
+     * @param key key
+     * @return MapCache
+     */
+    public MapCache<K, V> shardFor(Object key) {
+        int h = key.hashCode();
+        // 与ConcurrentHashMap内部的低位索引错开，取高位
+        h ^= h >>> 16;
+        h *= 0x9e3779b9;
+        return this.shards[(h >>> 16) & this.shardMask];
+    }
+
+    public int getShardCount() {
+        return this.shards.length;
+    }
+
+    public V get(Object key) {
+        return this.shardFor(key).getValue(key);
+    }
+
+    public V get(K key, MapCache.Loader<? super K, ? extends V> loader, long expire) {
+        return this.shardFor(key).get(key, loader, expire);
+    }
+
+    public V get(K key, MapCache.Loader<? super K, ? extends V> loader, long expire, long refreshAhead) {
+        return this.shardFor(key).get(key, loader, expire, refreshAhead);
+    }
+
+    public CompletableFuture<V> refresh(K key, MapCache.Loader<? super K, ? extends V> loader, long expire) {
+        return this.shardFor(key).refresh(key, loader, expire);
+    }
+
+    public V put(K key, V value, long expire) {
+        return this.shardFor(key).put(key, value, expire);
+    }
+
+    public V remove(Object key) {
+        final MapCache.Node<K, V> node = this.shardFor(key).remove(key);
+        return null == node || node.isExpire() ? null : node.getValue();
+    }
+
+    public boolean containsKey(Object key) {
+        return null != this.get(key);
+    }
+
+    public int size() {
+        int size = 0;
+        for (MapCache<K, V> shard : this.shards) {
+            size += shard.size();
+        }
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return 0 == this.size();
+    }
+
+    public void clear() {
+        for (MapCache<K, V> shard : this.shards) {
+            shard.clear();
+        }
+    }
+
+    public void cleanUp() {
+        for (MapCache<K, V> shard : this.shards) {
+            shard.cleanUp();
+        }
+    }
+
+    public void addRemovalListener(MapCache.RemovalListener<? super K, ? super V> removalListener) {
+        for (MapCache<K, V> shard : this.shards) {
+            shard.addRemovalListener(removalListener);
+        }
+    }
+
+    public void addWriteListener(MapCache.WriteListener<? super K, ? super V> writeListener) {
+        for (MapCache<K, V> shard : this.shards) {
+            shard.addWriteListener(writeListener);
+        }
+    }
+
+    public long getWeightedSize() {
+        long weightedSize = 0L;
+        for (MapCache<K, V> shard : this.shards) {
+            weightedSize += shard.getWeightedSize();
+        }
+        return weightedSize;
+    }
+
+    public long getHitCount() {
+        long count = 0L;
+        for (MapCache<K, V> shard : this.shards) {
+            count += shard.getHitCount();
+        }
+        return count;
+    }
+
+    public long getMissCount() {
+        long count = 0L;
+        for (MapCache<K, V> shard : this.shards) {
+            count += shard.getMissCount();
+        }
+        return count;
+    }
+
+    public long getEvictionCount() {
+        long count = 0L;
+        for (MapCache<K, V> shard : this.shards) {
+            count += shard.getEvictionCount();
+        }
+        return count;
+    }
+
+    /**
+     * 每个分片开启热点key统计
+     *
+     * @param capacity 每个分片跟踪的key数
+     */
+    public void enableHotKeys(int capacity) {
+        for (MapCache<K, V> shard : this.shards) {
+            shard.enableHotKeys(capacity);
+        }
+    }
+
+    public void disableHotKeys() {
+        for (MapCache<K, V> shard : this.shards) {
+            shard.disableHotKeys();
+        }
+    }
+
+    /**
+     * 各分片统计之和
+     *
+     * @return MapCacheStats
+     */
+    public MapCacheStats stats() {
+        return this.stats(MapCache.DEFAULT_HOT_KEYS);
+    }
+
+    public MapCacheStats stats(int k) {
+        MapCacheStats stats = this.shards[0].stats(k);
+        for (int i = 1; i < this.shards.length; i++) {
+            stats = stats.plus(this.shards[i].stats(k), k);
+        }
+        return stats;
+    }
+
+    public void resetPeaks() {
+        for (MapCache<K, V> shard : this.shards) {
+            shard.resetPeaks();
+        }
+    }
+}
@@ -0,0 +1,317 @@
+package com.xcoder.utilities.common;
+
+import com.xcoder.utilities.io.Io;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+/**
+ * 堆外slab分配器
+ * slab为direct ByteBuffer或内存映射文件区域，按2的幂分级切块，释放的块进入对应级别的空闲栈复用；
+ * 空间不足时回收已无存活块的slab，从各级空闲栈中摘除其块后供任意级别重新切块，避免各级之间空闲空间不能共享
+ *
+ * @author chuck lee
+ */
+final class SlabAllocator implements AutoCloseable {
+
+    /**
+     * 最小块 64B
+     */
+    private static final int MIN_CHUNK_SHIFT = 6;
+
+    /**
+     * load fence：Java 9+ 为 VarHandle.acquireFence，Java 8 为 Unsafe.loadFence
+     */
+    private static final MethodHandle LOAD_FENCE = loadFence();
+
+    /**
+     * 已分配的块
+     */
+    static final class Slot {
+        final int slab;
+        final int offset;
+        final int capacity;
+        final int length;
+
+        /**
+         * 已释放，读线程拷贝后检查，防止读到被复用的块
+         */
+        volatile boolean freed;
+
+        Slot(int slab, int offset, int capacity, int length) {
+            this.slab = slab;
+            this.offset = offset;
+            this.capacity = capacity;
+            this.length = length;
+        }
+    }
+
+    private final int slabSize;
+
+    private final int maxSlabs;
+
+    /**
+     * null 时使用direct ByteBuffer
+     */
+    private final RandomAccessFile file;
+
+    private final FileChannel channel;
+
+    /**
+     * slab 在slot创建前写入，读线程通过map拿到slot后可见
+     */
+    private final ByteBuffer[] slabs;
+
+    private volatile int slabCount;
+
+    /**
+     * 每个slab已分配未释放的块数
+     */
+    private final int[] liveCounts;
+
+    /**
+     * 已回收的空slab
+     */
+    private final int[] emptySlabs;
+
+    private int emptyCount;
+
+    private boolean closed;
+
+    /**
+     * 每级空闲块，slab &lt;&lt; 32 | offset
+     */
+    private final long[][] freeStacks;
+
+    private final int[] freeSizes;
+
+    /**
+     * 当前切块的slab，-1 表示还没有
+     */
+    private int bumpSlab = -1;
+
+    /**
+     * 当前slab已切出的位置
+     */
+    private int bumpOffset;
+
+    SlabAllocator(final int slabSize, final long capacity, final String mappedFile) throws IOException {
+        if (Integer.bitCount(slabSize) != 1 || (1 << MIN_CHUNK_SHIFT) > slabSize) {
+            throw new RuntimeException("Slab size must be a power of two and not less than 64...");
+        }
+        this.slabSize = slabSize;
+        this.maxSlabs = (int) Math.max(1L, (capacity + slabSize - 1) / slabSize);
+        final int classes = Integer.numberOfTrailingZeros(slabSize) - MIN_CHUNK_SHIFT + 1;
+        this.slabs = new ByteBuffer[this.maxSlabs];
+        this.liveCounts = new int[this.maxSlabs];
+        this.emptySlabs = new int[this.maxSlabs];
+        this.freeStacks = new long[classes][16];
+        this.freeSizes = new int[classes];
+        this.bumpOffset = slabSize;
+        if (null == mappedFile) {
+            this.file = null;
+            this.channel = null;
+        } else {
+            this.file = new RandomAccessFile(mappedFile, "rw");
+            this.file.setLength((long) this.maxSlabs * slabSize);
+            this.channel = this.file.getChannel();
+        }
+    }
+
+    /**
+     * 分配并写入
+     *
+     * @param bytes bytes
+     * @return slot, 空间不足返回null
+     * @throws IOException IOException
+     */
+    synchronized Slot allocate(final byte[] bytes) throws IOException {
+        final int length = bytes.length;
+        if (length > this.slabSize) {
+            throw new RuntimeException("Value larger than slab size...");
+        }
+        if (this.closed) {
+            throw new RuntimeException("Slab allocator is closed...");
+        }
+        final int sizeClass = sizeClassOf(length);
+        final int capacity = 1 << (sizeClass + MIN_CHUNK_SHIFT);
+        final long address;
+        if (0 < this.freeSizes[sizeClass]) {
+            address = this.freeStacks[sizeClass][--this.freeSizes[sizeClass]];
+        } else {
+            if (this.slabSize - this.bumpOffset < capacity && !this.nextSlab()
+                    && !(this.reclaim() && this.nextSlab())) {
+                return null;
+            }
+            address = ((long) this.bumpSlab << 32) | this.bumpOffset;
+            this.bumpOffset += capacity;
+        }
+        final Slot slot = new Slot((int) (address >>> 32), (int) address, capacity, length);
+        this.liveCounts[slot.slab]++;
+        final ByteBuffer buffer = this.slabs[slot.slab].duplicate();
+        buffer.position(slot.offset);
+        buffer.put(bytes);
+        return slot;
+    }
+
+    /**
+     * 读取，块已释放返回null
+     *
+     * @param slot slot
+     * @return bytes
+     */
+    byte[] read(final Slot slot) {
+        final ByteBuffer slab = this.slabs[slot.slab];
+        if (null == slab) {
+            // 已close
+            return null;
+        }
+        final ByteBuffer buffer = slab.duplicate();
+        buffer.position(slot.offset);
+        final byte[] bytes = new byte[slot.length];
+        buffer.get(bytes);
+        // 同StampedLock.validate，拷贝的普通读不能重排到freed检查之后，否则可能返回被复用块的半截数据
+        fence();
+        return slot.freed ? null : bytes;
+    }
+
+    /**
+     * 释放
+     *
+     * @param slot slot
+     */
+    synchronized void free(final Slot slot) {
+        if (slot.freed) {
+            return;
+        }
+        slot.freed = true;
+        this.liveCounts[slot.slab]--;
+        final int sizeClass = Integer.numberOfTrailingZeros(slot.capacity) - MIN_CHUNK_SHIFT;
+        long[] stack = this.freeStacks[sizeClass];
+        if (this.freeSizes[sizeClass] == stack.length) {
+            stack = Arrays.copyOf(stack, stack.length << 1);
+            this.freeStacks[sizeClass] = stack;
+        }
+        stack[this.freeSizes[sizeClass]++] = ((long) slot.slab << 32) | slot.offset;
+    }
+
+    /**
+     * 已申请的堆外字节数
+     *
+     * @return bytes
+     */
+    long reserved() {
+        return (long) this.slabCount * this.slabSize;
+    }
+
+    @Override
+    public synchronized void close() {
+        this.closed = true;
+        Arrays.fill(this.slabs, null);
+        this.slabCount = 0;
+        Io.closeableClose(this.channel, this.file);
+    }
+
+    /**
+     * 切换到新的切块slab，优先复用回收的空slab
+     *
+     * @return 没有可用slab返回false
+     * @throws IOException IOException
+     */
+    private boolean nextSlab() throws IOException {
+        if (0 < this.emptyCount) {
+            this.bumpSlab = this.emptySlabs[--this.emptyCount];
+        } else if (this.slabCount < this.maxSlabs) {
+            this.slabs[this.slabCount] = this.newSlab(this.slabCount);
+            this.bumpSlab = this.slabCount++;
+        } else {
+            return false;
+        }
+        this.bumpOffset = 0;
+        return true;
+    }
+
+    /**
+     * 回收没有存活块的slab(当前切块的除外)，从各级空闲栈中摘除其块
+     *
+     * @return 回收到slab返回true
+     */
+    private boolean reclaim() {
+        final boolean[] empty = new boolean[this.slabCount];
+        boolean reclaimed = false;
+        for (int i = 0; i < this.slabCount; i++) {
+            if (0 == this.liveCounts[i] && i != this.bumpSlab && !this.isEmptySlab(i)) {
+                empty[i] = true;
+                this.emptySlabs[this.emptyCount++] = i;
+                reclaimed = true;
+            }
+        }
+        if (!reclaimed) {
+            return false;
+        }
+        for (int c = 0; c < this.freeStacks.length; c++) {
+            final long[] stack = this.freeStacks[c];
+            int size = 0;
+            for (int i = 0; i < this.freeSizes[c]; i++) {
+                if (!empty[(int) (stack[i] >>> 32)]) {
+                    stack[size++] = stack[i];
+                }
+            }
+            this.freeSizes[c] = size;
+        }
+        return true;
+    }
+
+    private boolean isEmptySlab(final int slab) {
+        for (int i = 0; i < this.emptyCount; i++) {
+            if (slab == this.emptySlabs[i]) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private ByteBuffer newSlab(final int index) throws IOException {
+        if (null == this.channel) {
+            return ByteBuffer.allocateDirect(this.slabSize);
+        }
+        return this.channel.map(FileChannel.MapMode.READ_WRITE, (long) index * this.slabSize, this.slabSize);
+    }
+
+    private static int sizeClassOf(final int length) {
+        final int size = Math.max(length, 1 << MIN_CHUNK_SHIFT);
+        return 32 - Integer.numberOfLeadingZeros(size - 1) - MIN_CHUNK_SHIFT;
+    }
+
+    private static void fence() {
+        try {
+            LOAD_FENCE.invokeExact();
+        } catch (Throwable t) {
+            throw new RuntimeException(t);
+        }
+    }
+
+    private static MethodHandle loadFence() {
+        final MethodType type = MethodType.methodType(void.class);
+        try {
+            return MethodHandles.publicLookup().findStatic(Class.forName("java.lang.invoke.VarHandle"), "acquireFence", type);
+        } catch (Exception e) {
+            // Java 8
+        }
+        try {
+            final Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            final Field field = unsafeClass.getDeclaredField("theUnsafe");
+            field.setAccessible(true);
+            return MethodHandles.publicLookup().findVirtual(unsafeClass, "loadFence", type).bindTo(field.get(null));
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
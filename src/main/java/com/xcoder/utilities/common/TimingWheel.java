@@ -0,0 +1,212 @@
+package com.xcoder.utilities.common;
+
+import java.util.function.Consumer;
+
+/**
+ * Hierarchical timing wheel for MapCache.Node expire
+ * 非线程安全，由MapCache的eviction lock保护
+ *
+ * @author chuck lee
+ */
+final class TimingWheel {
+
+    /**
+     * 每层槽位数位移(64 slots)
+     */
+    private static final int WHEEL_SHIFT = 6;
+
+    /**
+     * 每层槽位数
+     */
+    private static final int WHEEL_SIZE = 1 << WHEEL_SHIFT;
+
+    /**
+     * 槽位掩码
+     */
+    private static final int WHEEL_MASK = WHEEL_SIZE - 1;
+
+    /**
+     * 层数，tick = 100ms 时最大覆盖约19天，超出部分在顶层循环降级
+     */
+    private static final int WHEEL_LEVELS = 4;
+
+    /**
+     * 最大可直接定位的tick跨度
+     */
+    private static final long MAX_SPAN = 1L << (WHEEL_SHIFT * WHEEL_LEVELS);
+
+    /**
+     * 每个tick的毫秒数
+     */
+    private final long tickTime;
+
+    /**
+     * 槽位哨兵节点，双向循环链表
+     */
+    private final MapCache.Node<?, ?>[][] wheels;
+
+    /**
+     * 已处理到的tick
+     */
+    private long currentTick;
+
+    /**
+     * 挂载的节点数
+     */
+    private int size;
+
+    TimingWheel(final long tickTime, final long now) {
+        if (0 >= tickTime) {
+            throw new RuntimeException("Timing wheel tick time must be positive...");
+        }
+        this.tickTime = tickTime;
+        this.currentTick = now / tickTime;
+        this.wheels = new MapCache.Node<?, ?>[WHEEL_LEVELS][WHEEL_SIZE];
+        for (int i = 0; i < WHEEL_LEVELS; i++) {
+            for (int j = 0; j < WHEEL_SIZE; j++) {
+                final MapCache.Node<?, ?> sentinel = new MapCache.Node<>();
+                sentinel.wheelPrev = sentinel;
+                sentinel.wheelNext = sentinel;
+                this.wheels[i][j] = sentinel;
+            }
+        }
+    }
+
+    int size() {
+        return this.size;
+    }
+
+    boolean isEmpty() {
+        return 0 == this.size;
+    }
+
+    /**
+     * 下一个tick的时间点
+     *
+     * @return millis
+     */
+    long nextTickTime() {
+        return (this.currentTick + 1) * this.tickTime;
+    }
+
+    /**
+     * 挂载节点，已挂载的节点会先摘除再重新定位
+     *
+     * @param node node
+     */
+    void schedule(final MapCache.Node<?, ?> node) {
+        this.cancel(node);
+        // 当前tick的槽位已处理，最早挂到下一个tick
+        this.place(node, this.currentTick + 1);
+    }
+
+    /**
+     * 摘除节点，未挂载时无操作
+     *
+     * @param node node
+     */
+    void cancel(final MapCache.Node<?, ?> node) {
+        if (null == node.wheelNext) {
+            return;
+        }
+        node.wheelPrev.wheelNext = node.wheelNext;
+        node.wheelNext.wheelPrev = node.wheelPrev;
+        node.wheelPrev = null;
+        node.wheelNext = null;
+        this.size--;
+    }
+
+    /**
+     * 推进到now，过期节点交给expired处理，每个tick只访问到期的槽位
+     *
+     * @param now     now
+     * @param expired expired
+     */
+    void advance(final long now, final Consumer<MapCache.Node<?, ?>> expired) {
+        for (final long target = now / this.tickTime; this.currentTick < target; ) {
+            if (this.isEmpty()) {
+                this.currentTick = target;
+                return;
+            }
+            final long tick = ++this.currentTick;
+            // 低层转完一圈时，将上层对应槽位降级
+            for (int level = 1; level < WHEEL_LEVELS; level++) {
+                final int shift = WHEEL_SHIFT * level;
+                if (0 != (tick & ((1L << shift) - 1))) {
+                    break;
+                }
+                this.cascade(this.wheels[level][(int) ((tick >>> shift) & WHEEL_MASK)]);
+            }
+            final MapCache.Node<?, ?> sentinel = this.wheels[0][(int) (tick & WHEEL_MASK)];
+            for (MapCache.Node<?, ?> node = sentinel.wheelNext; sentinel != node; node = sentinel.wheelNext) {
+                this.cancel(node);
+                if (this.expireTick(node) > tick) {
+                    this.place(node, tick);
+                } else {
+                    expired.accept(node);
+                }
+            }
+        }
+    }
+
+    /**
+     * 清空
+     */
+    void clear() {
+        for (MapCache.Node<?, ?>[] wheel : this.wheels) {
+            for (MapCache.Node<?, ?> sentinel : wheel) {
+                for (MapCache.Node<?, ?> node = sentinel.wheelNext; sentinel != node; node = sentinel.wheelNext) {
+                    this.cancel(node);
+                }
+            }
+        }
+    }
+
+    /**
+     * 上层槽位重新定位到下层
+     *
+     * @param sentinel sentinel
+     */
+    private void cascade(final MapCache.Node<?, ?> sentinel) {
+        for (MapCache.Node<?, ?> node = sentinel.wheelNext; sentinel != node; node = sentinel.wheelNext) {
+            this.cancel(node);
+            this.place(node, this.currentTick);
+        }
+    }
+
+    /**
+     * 按剩余tick数选择层和槽位
+     *
+     * @param node      node
+     * @param floorTick 最早可挂载的tick
+     */
+    private void place(final MapCache.Node<?, ?> node, final long floorTick) {
+        long tick = Math.max(this.expireTick(node), floorTick);
+        long delta = tick - this.currentTick;
+        if (MAX_SPAN <= delta) {
+            // 超出最大跨度，先挂在顶层最远处，降级时再按真实过期时间定位
+            delta = MAX_SPAN - 1;
+            tick = this.currentTick + delta;
+        }
+        int level = 0;
+        while (level < WHEEL_LEVELS - 1 && (1L << (WHEEL_SHIFT * (level + 1))) <= delta) {
+            level++;
+        }
+        final MapCache.Node<?, ?> sentinel = this.wheels[level][(int) ((tick >>> (WHEEL_SHIFT * level)) & WHEEL_MASK)];
+        node.wheelPrev = sentinel.wheelPrev;
+        node.wheelNext = sentinel;
+        sentinel.wheelPrev.wheelNext = node;
+        sentinel.wheelPrev = node;
+        this.size++;
+    }
+
+    /**
+     * 节点过期的tick，严格晚于expireTime
+     *
+     * @param node node
+     * @return tick
+     */
+    private long expireTick(final MapCache.Node<?, ?> node) {
+        return node.expireTime / this.tickTime + 1;
+    }
+}
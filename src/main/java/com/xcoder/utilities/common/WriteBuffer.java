@@ -0,0 +1,128 @@
+package com.xcoder.utilities.common;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Consumer;
+
+/**
+ * 分段有界写缓冲，记录待挂载/摘除的节点，不丢弃
+ * 按线程id选段，不同线程的写落在不同的计数器上，不再争用同一个队列尾和计数；
+ * offer多线程，drain由持有MapCache eviction lock的线程执行；段满时写线程需先drain再重试
+ *
+ * @author chuck lee
+ */
+final class WriteBuffer {
+
+    /**
+     * 已写入
+     */
+    static final int OFFERED = 0;
+
+    /**
+     * 已写入，积压过半，应尝试drain
+     */
+    static final int DRAIN = 1;
+
+    /**
+     * 段已满，未写入
+     */
+    static final int FULL = 2;
+
+    private static final int STRIPE_SIZE = 128;
+
+    private static final int STRIPE_MASK = STRIPE_SIZE - 1;
+
+    private static final int MAXIMUM_STRIPES = 32;
+
+    private final Stripe[] stripes;
+
+    private final int mask;
+
+    WriteBuffer() {
+        final int processors = Math.min(MAXIMUM_STRIPES, Runtime.getRuntime().availableProcessors());
+        final int count = Integer.highestOneBit(Math.max(1, (processors << 1) - 1));
+        this.stripes = new Stripe[count];
+        for (int i = 0; i < count; i++) {
+            this.stripes[i] = new Stripe();
+        }
+        this.mask = count - 1;
+    }
+
+    /**
+     * 记录写
+     *
+     * @param node node
+     * @return OFFERED、DRAIN 或 FULL
+     */
+    int offer(final MapCache.Node<?, ?> node) {
+        final long id = Thread.currentThread().getId();
+        final int h = (int) (id ^ (id >>> 32)) * 0x9E3779B9;
+        return this.stripes[(h ^ (h >>> 16)) & this.mask].offer(node);
+    }
+
+    /**
+     * 取出已记录的节点
+     *
+     * @param consumer consumer
+     * @return 取出的节点数
+     */
+    int drain(final Consumer<MapCache.Node<?, ?>> consumer) {
+        int count = 0;
+        for (Stripe stripe : this.stripes) {
+            count += stripe.drain(consumer);
+        }
+        return count;
+    }
+
+    boolean isEmpty() {
+        for (Stripe stripe : this.stripes) {
+            if (stripe.writeCounter.get() != stripe.readCounter) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 单段环形缓冲，多写单读
+     */
+    private static final class Stripe {
+
+        private final AtomicReferenceArray<MapCache.Node<?, ?>> buffer = new AtomicReferenceArray<>(STRIPE_SIZE);
+
+        private final AtomicLong writeCounter = new AtomicLong();
+
+        private volatile long readCounter;
+
+        private int offer(final MapCache.Node<?, ?> node) {
+            for (; ; ) {
+                final long w = this.writeCounter.get();
+                final long size = w - this.readCounter;
+                if (STRIPE_SIZE <= size) {
+                    return FULL;
+                }
+                if (this.writeCounter.compareAndSet(w, w + 1)) {
+                    this.buffer.lazySet((int) (w & STRIPE_MASK), node);
+                    return STRIPE_SIZE >> 1 <= size + 1 ? DRAIN : OFFERED;
+                }
+            }
+        }
+
+        private int drain(final Consumer<MapCache.Node<?, ?>> consumer) {
+            long r = this.readCounter;
+            final long start = r;
+            for (final long w = this.writeCounter.get(); r < w; r++) {
+                final int index = (int) (r & STRIPE_MASK);
+                final MapCache.Node<?, ?> node = this.buffer.get(index);
+                if (null == node) {
+                    // 写线程已占位但还未写入，下次drain继续
+                    break;
+                }
+                this.buffer.lazySet(index, null);
+                consumer.accept(node);
+            }
+            this.readCounter = r;
+            return (int) (r - start);
+        }
+    }
+}
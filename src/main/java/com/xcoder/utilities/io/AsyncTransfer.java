@@ -0,0 +1,242 @@
+package com.xcoder.utilities.io;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.AsynchronousByteChannel;
+import java.nio.channels.AsynchronousFileChannel;
+import java.nio.channels.CompletionHandler;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Async transfer
+ * 基于AsynchronousFileChannel/AsynchronousSocketChannel的非阻塞复制，不占用线程等待IO；
+ * 每个传输只有一个缓冲区，写完才发起下一次读，读速度不会超过写速度(背压)
+ * <p>
+ * 返回的future完成值为复制字节数，cancel后在下一次读之前停止；通道由调用方关闭(Path版本除外)
+ *
+ * @author chuck lee
+ */
+public class AsyncTransfer {
+
+    /**
+     * 默认缓冲区大小
+     */
+    public static final int DEFAULT_BUFFER_SIZE = 1 << 16;
+
+    /**
+     * 异步读
+     */
+    @FunctionalInterface
+    private interface Source {
+        void read(ByteBuffer buffer, long offset, CompletionHandler<Integer, Void> handler);
+    }
+
+    /**
+     * 异步写
+     */
+    @FunctionalInterface
+    private interface Sink {
+        void write(ByteBuffer buffer, long offset, CompletionHandler<Integer, Void> handler);
+    }
+
+    /**
+     * 文件到文件，完成后关闭两个通道
+     *
+     * @param src src
+     * @param dst dst，已存在时覆盖
+     * @return 复制字节数
+     */
+    public static CompletableFuture<Long> copyAsync(Path src, Path dst) {
+        final AsynchronousFileChannel in;
+        final AsynchronousFileChannel out;
+        try {
+            in = AsynchronousFileChannel.open(src, StandardOpenOption.READ);
+        } catch (IOException e) {
+            return failed(e);
+        }
+        try {
+            out = AsynchronousFileChannel.open(dst, StandardOpenOption.CREATE, StandardOpenOption.WRITE
+                    , StandardOpenOption.TRUNCATE_EXISTING);
+        } catch (IOException e) {
+            Io.closeableClose(in);
+            return failed(e);
+        }
+        final CompletableFuture<Long> future = copyAsync(in, 0L, out, 0L);
+        future.whenComplete((count, t) -> Io.closeableClose(in, out));
+        return future;
+    }
+
+    /**
+     * 文件从position开始到EOF，写入文件的position
+     *
+     * @param src         src
+     * @param srcPosition srcPosition
+     * @param dst         dst
+     * @param dstPosition dstPosition
+     * @return 复制字节数
+     */
+    public static CompletableFuture<Long> copyAsync(AsynchronousFileChannel src, long srcPosition
+            , AsynchronousFileChannel dst, long dstPosition) {
+        return new Pump(source(src, srcPosition), sink(dst, dstPosition)).start();
+    }
+
+    /**
+     * 文件到socket
+     *
+     * @param src         src
+     * @param srcPosition srcPosition
+     * @param dst         dst
+     * @return 复制字节数
+     */
+    public static CompletableFuture<Long> copyAsync(AsynchronousFileChannel src, long srcPosition
+            , AsynchronousByteChannel dst) {
+        return new Pump(source(src, srcPosition), sink(dst)).start();
+    }
+
+    /**
+     * socket到文件，直到对端关闭
+     *
+     * @param src         src
+     * @param dst         dst
+     * @param dstPosition dstPosition
+     * @return 复制字节数
+     */
+    public static CompletableFuture<Long> copyAsync(AsynchronousByteChannel src, AsynchronousFileChannel dst
+            , long dstPosition) {
+        return new Pump(source(src), sink(dst, dstPosition)).start();
+    }
+
+    /**
+     * socket到socket，直到src对端关闭
+     *
+     * @param src src
+     * @param dst dst
+     * @return 复制字节数
+     */
+    public static CompletableFuture<Long> copyAsync(AsynchronousByteChannel src, AsynchronousByteChannel dst) {
+        return new Pump(source(src), sink(dst)).start();
+    }
+
+    private static Source source(final AsynchronousFileChannel channel, final long position) {
+        return (buffer, offset, handler) -> channel.read(buffer, position + offset, null, handler);
+    }
+
+    private static Source source(final AsynchronousByteChannel channel) {
+        return (buffer, offset, handler) -> channel.read(buffer, null, handler);
+    }
+
+    private static Sink sink(final AsynchronousFileChannel channel, final long position) {
+        return (buffer, offset, handler) -> channel.write(buffer, position + offset, null, handler);
+    }
+
+    private static Sink sink(final AsynchronousByteChannel channel) {
+        return (buffer, offset, handler) -> channel.write(buffer, null, handler);
+    }
+
+    private static <T> CompletableFuture<T> failed(final Throwable t) {
+        final CompletableFuture<T> future = new CompletableFuture<>();
+        future.completeExceptionally(t);
+        return future;
+    }
+
+    /**
+     * 读 -&gt; 写(直到写完) -&gt; 读 ... 的回调链
+     */
+    private static final class Pump {
+
+        private final Source source;
+
+        private final Sink sink;
+
+        private final CompletableFuture<Long> future = new CompletableFuture<>();
+
+        private final ByteBuffer buffer = BufferPool.acquireDirect(DEFAULT_BUFFER_SIZE);
+
+        private long read;
+
+        private long written;
+
+        private final CompletionHandler<Integer, Void> readHandler = new CompletionHandler<Integer, Void>() {
+            @Override
+            public void completed(Integer n, Void attachment) {
+                if (-1 == n) {
+                    Pump.this.complete(null);
+                    return;
+                }
+                Pump.this.read += n;
+                Pump.this.buffer.flip();
+                Pump.this.write();
+            }
+
+            @Override
+            public void failed(Throwable t, Void attachment) {
+                Pump.this.complete(t);
+            }
+        };
+
+        private final CompletionHandler<Integer, Void> writeHandler = new CompletionHandler<Integer, Void>() {
+            @Override
+            public void completed(Integer n, Void attachment) {
+                Pump.this.written += n;
+                if (Pump.this.buffer.hasRemaining()) {
+                    Pump.this.write();
+                } else {
+                    Pump.this.read();
+                }
+            }
+
+            @Override
+            public void failed(Throwable t, Void attachment) {
+                Pump.this.complete(t);
+            }
+        };
+
+        private Pump(Source source, Sink sink) {
+            this.source = source;
+            this.sink = sink;
+        }
+
+        private CompletableFuture<Long> start() {
+            this.read();
+            return this.future;
+        }
+
+        private void read() {
+            if (this.future.isDone()) {
+                // 已被cancel
+                this.complete(null);
+                return;
+            }
+            this.buffer.clear();
+            try {
+                this.source.read(this.buffer, this.read, this.readHandler);
+            } catch (Throwable t) {
+                this.complete(t);
+            }
+        }
+
+        private void write() {
+            try {
+                this.sink.write(this.buffer, this.written, this.writeHandler);
+            } catch (Throwable t) {
+                this.complete(t);
+            }
+        }
+
+        /**
+         * 回调链的唯一出口，只调用一次
+         *
+         * @param t 失败原因，null 成功
+         */
+        private void complete(final Throwable t) {
+            BufferPool.release(this.buffer);
+            if (null == t) {
+                this.future.complete(this.written);
+            } else {
+                this.future.completeExceptionally(t);
+            }
+        }
+    }
+}
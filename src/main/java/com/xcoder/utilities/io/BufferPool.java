@@ -0,0 +1,449 @@
+package com.xcoder.utilities.io;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Buffer pool
+ * 按2的幂分级(512B ~ 1MB)复用byte[]和直接ByteBuffer，超过最大级别直接分配、不回收；
+ * 每个线程先用本地缓存，再用全局队列，都没有时才分配；虚拟线程数量多、生命周期短，不用本地缓存
+ * <p>
+ * -Dcom.xcoder.utilities.io.leakDetection=true 或 setLeakDetection(true) 开启泄漏检测：
+ * 借出的缓冲区被GC前未归还时打印借出位置，重复归还或归还非借出的缓冲区时打印归还位置；
+ * 运行中才开启时，开启前借出的缓冲区照常回收，只有确实已归还过的才报告重复归还
+ *
+ * @author chuck lee
+ */
+public class BufferPool {
+
+    /**
+     * 最小级别 512B
+     */
+    private static final int MIN_SHIFT = 9;
+
+    /**
+     * 最大级别 1MB
+     */
+    private static final int MAX_SHIFT = 20;
+
+    private static final int CLASS_COUNT = MAX_SHIFT - MIN_SHIFT + 1;
+
+    public static final int MAX_POOLED_SIZE = 1 << MAX_SHIFT;
+
+    /**
+     * 每个线程每级缓存的字节数上限
+     */
+    private static final int THREAD_CACHE_BYTES = 256 * 1024;
+
+    /**
+     * 全局每级缓存的字节数上限
+     */
+    private static final int GLOBAL_CACHE_BYTES = 16 * 1024 * 1024;
+
+    private static final Arena<byte[]> HEAP = new Arena<>();
+
+    private static final Arena<ByteBuffer> DIRECT = new Arena<>();
+
+    private static final LeakDetector LEAK_DETECTOR = new LeakDetector();
+
+    /**
+     * Thread.isVirtual()，Java 21 之前为null
+     */
+    private static final MethodHandle IS_VIRTUAL = isVirtual();
+
+    private static volatile boolean leakDetection = Boolean.getBoolean("com.xcoder.utilities.io.leakDetection");
+
+    /**
+     * 泄漏检测从启动起一直开启，所有借出都有记录，未记录的归还才能判定为非借出
+     */
+    private static volatile boolean leakDetectionComplete = leakDetection;
+
+    /**
+     * 借出长度不小于size的byte[]，用完必须release
+     *
+     * @param size size
+     * @return byte[]，长度为size所在级别大小
+     */
+    public static byte[] acquire(final int size) {
+        final int index = classIndex(size);
+        if (0 > index) {
+            return new byte[size];
+        }
+        byte[] buffer = HEAP.poll(index);
+        if (null == buffer) {
+            buffer = new byte[classSize(index)];
+        }
+        track(buffer);
+        return buffer;
+    }
+
+    /**
+     * 归还byte[]，非池内级别大小的直接丢弃
+     *
+     * @param buffer buffer
+     */
+    public static void release(final byte[] buffer) {
+        if (null == buffer) {
+            return;
+        }
+        final int index = classIndexOf(buffer.length);
+        if (0 > index || !untrack(buffer)) {
+            return;
+        }
+        HEAP.offer(index, buffer);
+    }
+
+    /**
+     * 借出容量不小于size的直接缓冲区，position 0，limit size，用完必须release
+     *
+     * @param size size
+     * @return ByteBuffer
+     */
+    public static ByteBuffer acquireDirect(final int size) {
+        final int index = classIndex(size);
+        if (0 > index) {
+            return ByteBuffer.allocateDirect(size);
+        }
+        ByteBuffer buffer = DIRECT.poll(index);
+        if (null == buffer) {
+            buffer = ByteBuffer.allocateDirect(classSize(index));
+        }
+        buffer.clear().limit(size);
+        track(buffer);
+        return buffer;
+    }
+
+    /**
+     * 归还直接缓冲区
+     *
+     * @param buffer buffer
+     */
+    public static void release(final ByteBuffer buffer) {
+        if (null == buffer || !buffer.isDirect()) {
+            return;
+        }
+        final int index = classIndexOf(buffer.capacity());
+        if (0 > index || !untrack(buffer)) {
+            return;
+        }
+        DIRECT.offer(index, buffer);
+    }
+
+    public static synchronized void setLeakDetection(boolean leakDetection) {
+        if (leakDetection == BufferPool.leakDetection) {
+            return;
+        }
+        if (leakDetection) {
+            // 开启前借出的缓冲区没有记录
+            leakDetectionComplete = false;
+        } else {
+            // 关闭期间的归还不再记录，清空避免误报泄漏
+            LEAK_DETECTOR.clear();
+        }
+        BufferPool.leakDetection = leakDetection;
+    }
+
+    public static boolean isLeakDetection() {
+        return leakDetection;
+    }
+
+    /**
+     * 当前被跟踪(借出未归还)的缓冲区数，仅泄漏检测开启时有效
+     *
+     * @return count
+     */
+    public static int getTrackedCount() {
+        LEAK_DETECTOR.report();
+        return LEAK_DETECTOR.size();
+    }
+
+    /**
+     * size 恰好是池内级别大小，acquire 返回的数组长度等于size
+     *
+     * @param size size
+     * @return boolean
+     */
+    static boolean isClassSize(final int size) {
+        return 0 <= classIndexOf(size);
+    }
+
+    /**
+     * 不小于size的最小级别
+     */
+    private static int classIndex(final int size) {
+        if (MAX_POOLED_SIZE < size) {
+            return -1;
+        }
+        final int shift = 32 - Integer.numberOfLeadingZeros(Math.max(size, 1 << MIN_SHIFT) - 1);
+        return shift - MIN_SHIFT;
+    }
+
+    /**
+     * capacity 恰好等于某级别时的级别
+     */
+    private static int classIndexOf(final int capacity) {
+        if (Integer.bitCount(capacity) != 1) {
+            return -1;
+        }
+        final int shift = Integer.numberOfTrailingZeros(capacity);
+        return MIN_SHIFT > shift || MAX_SHIFT < shift ? -1 : shift - MIN_SHIFT;
+    }
+
+    private static int classSize(final int index) {
+        return 1 << (index + MIN_SHIFT);
+    }
+
+    private static void track(final Object buffer) {
+        if (leakDetection) {
+            LEAK_DETECTOR.track(buffer);
+        }
+    }
+
+    /**
+     * @return 可以回收
+     */
+    private static boolean untrack(final Object buffer) {
+        return !leakDetection || LEAK_DETECTOR.untrack(buffer, leakDetectionComplete);
+    }
+
+    /**
+     * 当前线程是否使用本地缓存
+     *
+     * @return 虚拟线程返回false
+     */
+    private static boolean threadCached() {
+        if (null == IS_VIRTUAL) {
+            return true;
+        }
+        try {
+            return !(boolean) IS_VIRTUAL.invokeExact(Thread.currentThread());
+        } catch (Throwable t) {
+            return true;
+        }
+    }
+
+    private static MethodHandle isVirtual() {
+        try {
+            return MethodHandles.publicLookup().findVirtual(Thread.class, "isVirtual", MethodType.methodType(boolean.class));
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    /**
+     * 线程本地缓存 + 全局队列
+     */
+    private static final class Arena<T> {
+
+        private final List<ConcurrentLinkedQueue<T>> queues = new ArrayList<>(CLASS_COUNT);
+
+        private final AtomicInteger[] queueSizes = new AtomicInteger[CLASS_COUNT];
+
+        private final ThreadLocal<ThreadCache<T>> threadCache = ThreadLocal.withInitial(ThreadCache::new);
+
+        private Arena() {
+            for (int i = 0; i < CLASS_COUNT; i++) {
+                this.queues.add(new ConcurrentLinkedQueue<>());
+                this.queueSizes[i] = new AtomicInteger();
+            }
+        }
+
+        private T poll(final int index) {
+            if (threadCached()) {
+                final T buffer = this.threadCache.get().poll(index);
+                if (null != buffer) {
+                    return buffer;
+                }
+            }
+            final T polled = this.queues.get(index).poll();
+            if (null != polled) {
+                this.queueSizes[index].decrementAndGet();
+            }
+            return polled;
+        }
+
+        private void offer(final int index, final T buffer) {
+            if (threadCached() && this.threadCache.get().offer(index, buffer)) {
+                return;
+            }
+            if (Math.max(1, GLOBAL_CACHE_BYTES / classSize(index)) > this.queueSizes[index].get()) {
+                this.queueSizes[index].incrementAndGet();
+                this.queues.get(index).offer(buffer);
+            }
+        }
+    }
+
+    /**
+     * 每级一个小栈，仅当前线程访问
+     */
+    private static final class ThreadCache<T> {
+
+        private final Object[][] stacks = new Object[CLASS_COUNT][];
+
+        private final int[] sizes = new int[CLASS_COUNT];
+
+        private ThreadCache() {
+            for (int i = 0; i < CLASS_COUNT; i++) {
+                this.stacks[i] = new Object[Math.min(8, Math.max(1, THREAD_CACHE_BYTES / classSize(i)))];
+            }
+        }
+
+        @SuppressWarnings("unchecked")
+        private T poll(final int index) {
+            if (0 == this.sizes[index]) {
+                return null;
+            }
+            final int top = --this.sizes[index];
+            final T buffer = (T) this.stacks[index][top];
+            this.stacks[index][top] = null;
+            return buffer;
+        }
+
+        private boolean offer(final int index, final T buffer) {
+            if (this.stacks[index].length == this.sizes[index]) {
+                return false;
+            }
+            this.stacks[index][this.sizes[index]++] = buffer;
+            return true;
+        }
+    }
+
+    /**
+     * 借出记录，弱引用不影响GC；被GC时仍是借出状态即为泄漏
+     * 归还后记录保留为已归还状态，用于区分重复归还和检测开启前的借出；
+     * 同一identityHashCode的记录只在ConcurrentHashMap.compute内修改
+     */
+    private static final class LeakDetector {
+
+        private final ReferenceQueue<Object> queue = new ReferenceQueue<>();
+
+        /**
+         * identityHashCode -&gt; 借出记录
+         */
+        private final ConcurrentHashMap<Integer, List<Lease>> leases = new ConcurrentHashMap<>();
+
+        /**
+         * 借出状态的记录数
+         */
+        private final AtomicInteger size = new AtomicInteger();
+
+        private void track(final Object buffer) {
+            this.report();
+            this.leases.compute(System.identityHashCode(buffer), (hash, list) -> {
+                final List<Lease> l = null == list ? new ArrayList<>(1) : list;
+                final Lease lease = find(l, buffer);
+                if (null == lease) {
+                    l.add(new Lease(buffer, this.queue));
+                } else {
+                    // 已归还过的缓冲区再次借出
+                    lease.lend();
+                }
+                return l;
+            });
+            this.size.incrementAndGet();
+        }
+
+        /**
+         * @param buffer   buffer
+         * @param complete 所有借出都有记录
+         * @return 可以回收
+         */
+        private boolean untrack(final Object buffer, final boolean complete) {
+            // 0 未找到，1 借出中，2 已归还
+            final int[] state = new int[1];
+            this.leases.compute(System.identityHashCode(buffer), (hash, list) -> {
+                final List<Lease> l = null == list ? new ArrayList<>(1) : list;
+                final Lease lease = find(l, buffer);
+                if (null != lease) {
+                    state[0] = lease.released ? 2 : 1;
+                    lease.released = true;
+                } else if (!complete) {
+                    // 检测开启前借出，记为已归还，之后的重复归还可以发现
+                    final Lease released = new Lease(buffer, this.queue);
+                    released.released = true;
+                    l.add(released);
+                }
+                return l.isEmpty() ? null : l;
+            });
+            if (1 == state[0]) {
+                this.size.decrementAndGet();
+                return true;
+            }
+            if (0 == state[0] && !complete) {
+                return true;
+            }
+            new IllegalStateException("Buffer released twice or not acquired from BufferPool...").printStackTrace();
+            return false;
+        }
+
+        /**
+         * 打印已被GC但未归还的借出位置，已归还的记录直接移除
+         */
+        private void report() {
+            for (Lease lease = (Lease) this.queue.poll(); null != lease; lease = (Lease) this.queue.poll()) {
+                final Lease collected = lease;
+                final boolean[] leaked = new boolean[1];
+                this.leases.computeIfPresent(collected.hash, (hash, list) -> {
+                    if (list.remove(collected)) {
+                        leaked[0] = !collected.released;
+                    }
+                    return list.isEmpty() ? null : list;
+                });
+                if (leaked[0]) {
+                    this.size.decrementAndGet();
+                    collected.acquired.printStackTrace();
+                }
+            }
+        }
+
+        private void clear() {
+            this.leases.clear();
+            this.size.set(0);
+        }
+
+        private int size() {
+            return this.size.get();
+        }
+
+        private static Lease find(final List<Lease> list, final Object buffer) {
+            for (Lease lease : list) {
+                if (buffer == lease.get()) {
+                    return lease;
+                }
+            }
+            return null;
+        }
+    }
+
+    private static final class Lease extends WeakReference<Object> {
+
+        private final int hash;
+
+        /**
+         * 以下仅在leases.compute内修改
+         */
+        private Throwable acquired;
+
+        private boolean released;
+
+        private Lease(final Object buffer, final ReferenceQueue<Object> queue) {
+            super(buffer, queue);
+            this.hash = System.identityHashCode(buffer);
+            this.lend();
+        }
+
+        private void lend() {
+            this.acquired = new Throwable("LEAK: buffer acquired here was never released to BufferPool");
+            this.released = false;
+        }
+    }
+}
@@ -1,6 +1,10 @@
 package com.xcoder.utilities.io;
 
 import java.io.*;
+import java.net.Socket;
+import java.nio.channels.AsynchronousByteChannel;
+import java.nio.file.Paths;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * IO
@@ -10,12 +14,6 @@ import java.io.*;
  */
 public class Io {
 
-    private static final long DEFAULT_EXPIRE = 10000L;
-
-    private static final long DEFAULT_TIMEOUT = 50L;
-
-    private static final int DEFAULT_LENGTH = 102400;
-
     /**
      * Read byte array buffer
      *
@@ -34,48 +32,86 @@ public class Io {
     }
 
     /**
-     * Read input stream and write output stream
+     * Read input stream and write output stream until EOF
      *
      * @param is InputStream
      * @param os OutputStream
-     * @throws IOException          IOException
-     * @throws InterruptedException InterruptedException
+     * @throws IOException IOException
      */
-    public static void i2o(final InputStream is, final OutputStream os) throws IOException, InterruptedException {
-        i2o(is, os, DEFAULT_EXPIRE, DEFAULT_TIMEOUT, DEFAULT_LENGTH);
+    public static void i2o(final InputStream is, final OutputStream os) throws IOException {
+        Transfer.pump(is, os);
+        flushableFlush(os);
     }
 
     /**
-     * Read input stream and write output stream
+     * Read input stream and write output stream until EOF, 按limiter限速
      *
      * @param is      InputStream
      * @param os      OutputStream
-     * @param expire  expire
+     * @param limiter 单个传输或组的limiter，null 不限速
+     * @throws IOException IOException
+     */
+    public static void i2o(final InputStream is, final OutputStream os, final RateLimiter limiter) throws IOException {
+        Transfer.pump(is, os, limiter);
+        flushableFlush(os);
+    }
+
+    /**
+     * Read input stream and write output stream until EOF
+     *
+     * @param is      InputStream
+     * @param os      OutputStream
+     * @param expire  等待首个字节的最长时间
      * @param timeout timeout
-     * @param length  length
+     * @param length  缓冲区大小
      * @throws IOException          IOException
      * @throws InterruptedException InterruptedException
      */
     public static void i2o(final InputStream is, final OutputStream os, final long expire
             , final long timeout, final int length) throws IOException, InterruptedException {
-        final int available = available(is, expire, timeout);
-        read(is, available, length, os::write);
+        available(is, expire, timeout);
+        final byte[] buffer = BufferPool.acquire(length);
+        try {
+            Transfer.pump(is, os, buffer);
+        } finally {
+            BufferPool.release(buffer);
+        }
         flushableFlush(os);
     }
 
     /**
-     * Read input stream get byte array
+     * Copy file asynchronously, 不占用线程等待IO
+     *
+     * @param src src
+     * @param dst dst
+     * @return 复制字节数
+     */
+    public static CompletableFuture<Long> copyAsync(final String src, final String dst) {
+        return AsyncTransfer.copyAsync(Paths.get(src), Paths.get(dst));
+    }
+
+    /**
+     * Copy channel asynchronously until src EOF
+     *
+     * @param src src
+     * @param dst dst
+     * @return 复制字节数
+     */
+    public static CompletableFuture<Long> copyAsync(final AsynchronousByteChannel src, final AsynchronousByteChannel dst) {
+        return AsyncTransfer.copyAsync(src, dst);
+    }
+
+    /**
+     * Read input stream get byte array until EOF
      *
      * @param is InputStream
      * @return byte array
-     * @throws IOException          IOException
-     * @throws InterruptedException InterruptedException
+     * @throws IOException IOException
      */
-    public static byte[] read(final InputStream is) throws IOException, InterruptedException {
-        int available = available(is, DEFAULT_EXPIRE, DEFAULT_TIMEOUT);
+    public static byte[] read(final InputStream is) throws IOException {
         ByteArrayOutputStream bos = new ByteArrayOutputStream();
         try {
-            read(is, available, available, bos::write);
+            Transfer.pump(is, bos);
             return bos.toByteArray();
         } finally {
             closeableClose(bos);
@@ -84,49 +120,109 @@ public class Io {
 
     /**
      * Read input stream
+     * 整块共用一个缓冲区(length为2的幂时从BufferPool借用)，ir 不能持有buffer
      *
-     * @param is     is
-     * @param length length
-     * @param ir     ir
-     * @throws IOException          IOException
-     * @throws InterruptedException InterruptedException
+     * @param is        is
+     * @param available 要读取的总字节数
+     * @param length    每块字节数
+     * @param ir        ir
+     * @throws IOException IOException
      */
     public static void read(final InputStream is, final int available, final int length, final Ir ir) throws IOException {
         if (length > available) {
             throw new RuntimeException("length greater than available...");
         }
-        for (int i = 0, j = available / length; i < j; i++) {
-            byte[] buffer = new byte[length];
-            is.read(buffer);
-            ir.read(buffer);
+        final int chunks = available / length;
+        if (0 < chunks) {
+            // ir 按数组长度取块，length 不是池内级别大小时只能自己分配
+            final boolean pooled = BufferPool.isClassSize(length);
+            final byte[] buffer = pooled ? BufferPool.acquire(length) : new byte[length];
+            try {
+                for (int i = 0; i < chunks; i++) {
+                    readFully(is, buffer);
+                    ir.read(buffer);
+                }
+            } finally {
+                if (pooled) {
+                    BufferPool.release(buffer);
+                }
+            }
         }
 
         int remain = available % length;
         if (0 < remain) {
             byte[] buffer = new byte[remain];
+            readFully(is, buffer);
             ir.read(buffer);
         }
     }
 
+    /**
+     * Read until buffer full
+     *
+     * @param is     InputStream
+     * @param buffer buffer
+     * @throws IOException IOException, EOFException 流提前结束
+     */
+    public static void readFully(final InputStream is, final byte[] buffer) throws IOException {
+        for (int offset = 0; offset < buffer.length; ) {
+            final int n = is.read(buffer, offset, buffer.length - offset);
+            if (-1 == n) {
+                throw new EOFException("Stream ended after " + offset + " of " + buffer.length + " bytes...");
+            }
+            offset += n;
+        }
+    }
+
     /**
      * Get InputStream available.
+     * 等待由Readiness完成：间隔从1ms退避到timeout，数据到达后最多延迟一个间隔；
+     * expire &lt;= 0 时不会一直等待，与原来一样最多等一个timeout间隔后超时
      *
      * @param is      InputStream
      * @param expire  expire
-     * @param timeout timeout
+     * @param timeout 最长轮询间隔
      * @return available
      * @throws IOException          IOException
      * @throws InterruptedException InterruptedException
      */
     public static int available(final InputStream is, final long expire, final long timeout) throws IOException, InterruptedException {
-        int available = is.available();
-        for (long t0 = System.currentTimeMillis(); 1 > available; available = is.available()) {
-            if (expire < System.currentTimeMillis() - t0) {
+        if (0L >= expire) {
+            int available = is.available();
+            for (long t0 = System.currentTimeMillis(); 1 > available; available = is.available()) {
+                if (expire < System.currentTimeMillis() - t0) {
+                    throw new RuntimeException("Waiting available time out......");
+                }
+                Thread.sleep(timeout);
+            }
+            return available;
+        }
+        if (!Readiness.awaitReadable(is, expire, timeout)) {
+            throw new RuntimeException("Waiting available time out......");
+        }
+        return is.available();
+    }
+
+    /**
+     * Get Socket available, 由SocketChannel创建的Socket用Selector等待，数据到达即返回
+     *
+     * @param socket socket
+     * @param expire expire，&lt;= 0 时不等待
+     * @return available
+     * @throws IOException IOException
+     */
+    public static int available(final Socket socket, final long expire) throws IOException {
+        if (0L >= expire) {
+            final int available = socket.getInputStream().available();
+            if (1 > available) {
                 throw new RuntimeException("Waiting available time out......");
             }
-            Thread.sleep(timeout);
+            return available;
+        }
+        if (!Readiness.awaitReadable(socket, expire)) {
+            throw new RuntimeException("Waiting available time out......");
         }
-        return available;
+        return socket.getInputStream().available();
     }
 
     /**
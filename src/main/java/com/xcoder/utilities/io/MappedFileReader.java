@@ -0,0 +1,173 @@
+package com.xcoder.utilities.io;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Memory-mapped file reader
+ * 按窗口FileChannel.map，窗口用完自动映射下一段，支持超过2GB的文件；
+ * 回调拿到的ByteBuffer是映射区的只读视图，不复制数据，回调返回后不应再持有
+ *
+ * @author chuck lee
+ */
+public class MappedFileReader implements AutoCloseable {
+
+    /**
+     * 默认窗口大小
+     */
+    public static final long DEFAULT_WINDOW_SIZE = 64L << 20;
+
+    /**
+     * 单个映射的最大长度
+     */
+    private static final long MAX_WINDOW_SIZE = Integer.MAX_VALUE;
+
+    /**
+     * ByteBuffer read
+     */
+    @FunctionalInterface
+    public interface Br {
+        /**
+         * 读取一段
+         *
+         * @param buffer 只读视图，position 0，limit 为这一段长度
+         * @throws IOException IOException
+         */
+        void read(ByteBuffer buffer) throws IOException;
+    }
+
+    private final RandomAccessFile file;
+
+    private final FileChannel channel;
+
+    private final long windowSize;
+
+    public MappedFileReader(String path) throws IOException {
+        this(path, DEFAULT_WINDOW_SIZE);
+    }
+
+    /**
+     * Constructor
+     *
+     * @param path       path
+     * @param windowSize 每次映射的字节数
+     * @throws IOException IOException
+     */
+    public MappedFileReader(String path, long windowSize) throws IOException {
+        if (0L >= windowSize || MAX_WINDOW_SIZE < windowSize) {
+            throw new RuntimeException("Window size must be in (0, " + MAX_WINDOW_SIZE + "]...");
+        }
+        this.file = new RandomAccessFile(path, "r");
+        this.channel = this.file.getChannel();
+        this.windowSize = windowSize;
+    }
+
+    public long size() throws IOException {
+        return this.channel.size();
+    }
+
+    /**
+     * 映射任意一段
+     *
+     * @param position position
+     * @param length   length
+     * @return 只读映射
+     * @throws IOException IOException
+     */
+    public ByteBuffer map(long position, int length) throws IOException {
+        return this.channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+    }
+
+    /**
+     * 按固定长度切片顺序读取，最后一片可能较短；窗口大小向下对齐到sliceSize的整数倍，切片不跨窗口
+     *
+     * @param sliceSize sliceSize
+     * @param br        br
+     * @throws IOException IOException
+     */
+    public void slices(int sliceSize, Br br) throws IOException {
+        if (0 >= sliceSize) {
+            throw new RuntimeException("Slice size must be positive...");
+        }
+        final long window = Math.max(sliceSize, this.windowSize / sliceSize * sliceSize);
+        final long size = this.channel.size();
+        for (long position = 0L; position < size; position += window) {
+            final MappedByteBuffer buffer = this.channel.map(FileChannel.MapMode.READ_ONLY
+                    , position, Math.min(window, size - position));
+            for (int start = 0, limit = buffer.limit(); start < limit; start += sliceSize) {
+                deliver(buffer, start, Math.min(limit, start + sliceSize), br);
+            }
+        }
+    }
+
+    /**
+     * 按分隔符读取记录，记录不含分隔符；跨窗口的记录从记录起点重新映射，
+     * 单条记录超过窗口时窗口加倍，最长到2GB
+     *
+     * @param delimiter delimiter
+     * @param br        br
+     * @throws IOException IOException
+     */
+    public void records(byte delimiter, Br br) throws IOException {
+        final long size = this.channel.size();
+        long position = 0L;
+        long window = this.windowSize;
+        while (position < size) {
+            final long length = Math.min(window, size - position);
+            final MappedByteBuffer buffer = this.channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+            int start = 0;
+            for (int i = 0, limit = buffer.limit(); i < limit; i++) {
+                if (delimiter == buffer.get(i)) {
+                    deliver(buffer, start, i, br);
+                    start = i + 1;
+                }
+            }
+            if (size == position + length) {
+                if (start < length) {
+                    deliver(buffer, start, (int) length, br);
+                }
+                return;
+            }
+            if (0 == start) {
+                if (MAX_WINDOW_SIZE <= window) {
+                    throw new IOException("Record at " + position + " is longer than " + MAX_WINDOW_SIZE + " bytes...");
+                }
+                window = Math.min(MAX_WINDOW_SIZE, window << 1);
+                continue;
+            }
+            position += start;
+            window = this.windowSize;
+        }
+    }
+
+    /**
+     * 按行读取，去掉行尾的\n和\r\n
+     *
+     * @param br br
+     * @throws IOException IOException
+     */
+    public void lines(Br br) throws IOException {
+        this.records((byte) '\n', line -> {
+            final int limit = line.limit();
+            if (0 < limit && '\r' == line.get(limit - 1)) {
+                line.limit(limit - 1);
+            }
+            br.read(line);
+        });
+    }
+
+    @Override
+    public void close() {
+        Io.closeableClose(this.channel, this.file);
+    }
+
+    private static void deliver(final ByteBuffer buffer, final int start, final int end, final Br br) throws IOException {
+        buffer.limit(end).position(start);
+        final ByteBuffer slice = buffer.slice().asReadOnlyBuffer();
+        buffer.clear();
+        br.read(slice);
+    }
+}
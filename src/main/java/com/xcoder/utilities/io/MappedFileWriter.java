@@ -0,0 +1,137 @@
+package com.xcoder.utilities.io;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Memory-mapped file writer
+ * 顺序写入映射窗口，窗口写满自动映射下一段，支持超过2GB的文件；
+ * 映射会把文件扩展到窗口末尾，close时截断到实际写入长度
+ *
+ * @author chuck lee
+ */
+public class MappedFileWriter implements AutoCloseable {
+
+    private final RandomAccessFile file;
+
+    private final FileChannel channel;
+
+    private final long windowSize;
+
+    /**
+     * 当前窗口
+     */
+    private MappedByteBuffer window;
+
+    /**
+     * 当前窗口在文件中的起点
+     */
+    private long windowPosition;
+
+    public MappedFileWriter(String path) throws IOException {
+        this(path, MappedFileReader.DEFAULT_WINDOW_SIZE, false);
+    }
+
+    /**
+     * Constructor
+     *
+     * @param path       path
+     * @param windowSize 每次映射的字节数
+     * @param append     true 从文件末尾继续写，false 清空
+     * @throws IOException IOException
+     */
+    public MappedFileWriter(String path, long windowSize, boolean append) throws IOException {
+        if (0L >= windowSize || Integer.MAX_VALUE < windowSize) {
+            throw new RuntimeException("Window size must be in (0, " + Integer.MAX_VALUE + "]...");
+        }
+        this.file = new RandomAccessFile(path, "rw");
+        this.channel = this.file.getChannel();
+        this.windowSize = windowSize;
+        if (!append) {
+            this.channel.truncate(0L);
+        }
+        this.windowPosition = this.channel.size();
+        this.window = this.map(this.windowPosition);
+    }
+
+    /**
+     * 已写入的文件长度
+     *
+     * @return position
+     */
+    public long position() {
+        return this.windowPosition + this.window.position();
+    }
+
+    public void write(byte[] bytes) throws IOException {
+        this.write(bytes, 0, bytes.length);
+    }
+
+    public void write(byte[] bytes, int offset, int length) throws IOException {
+        while (0 < length) {
+            this.ensureRemaining();
+            final int n = Math.min(length, this.window.remaining());
+            this.window.put(bytes, offset, n);
+            offset += n;
+            length -= n;
+        }
+    }
+
+    /**
+     * 写入src的剩余字节，写完后src.position == src.limit
+     *
+     * @param src src
+     * @throws IOException IOException
+     */
+    public void write(ByteBuffer src) throws IOException {
+        final int limit = src.limit();
+        try {
+            while (src.hasRemaining()) {
+                this.ensureRemaining();
+                src.limit(src.position() + Math.min(src.remaining(), this.window.remaining()));
+                this.window.put(src);
+                src.limit(limit);
+            }
+        } finally {
+            src.limit(limit);
+        }
+    }
+
+    /**
+     * 当前窗口刷盘
+     */
+    public void flush() {
+        this.window.force();
+    }
+
+    /**
+     * 刷盘，截断映射多出的部分
+     */
+    @Override
+    public void close() {
+        try {
+            this.window.force();
+            this.channel.truncate(this.position());
+        } catch (Throwable t) {
+            t.printStackTrace();
+        } finally {
+            Io.closeableClose(this.channel, this.file);
+        }
+    }
+
+    private void ensureRemaining() throws IOException {
+        if (this.window.hasRemaining()) {
+            return;
+        }
+        this.window.force();
+        this.windowPosition += this.window.position();
+        this.window = this.map(this.windowPosition);
+    }
+
+    private MappedByteBuffer map(final long position) throws IOException {
+        return this.channel.map(FileChannel.MapMode.READ_WRITE, position, this.windowSize);
+    }
+}
@@ -0,0 +1,284 @@
+package com.xcoder.utilities.io;
+
+import java.io.IOException;
+import java.lang.reflect.Constructor;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+import java.util.zip.CRC32;
+import java.util.zip.Checksum;
+
+/**
+ * Parallel file copy
+ * 文件按range切分，在ForkJoinPool上用FileChannel定位读写并发复制，每个range单独计算校验和，
+ * 按range顺序合并为整个文件的校验和(与顺序计算结果相同)
+ * <p>
+ * 运行在Java 9+时用CRC32C，Java 8 没有CRC32C，退化为CRC32，getAlgorithm()返回实际算法
+ *
+ * @author chuck lee
+ */
+public class ParallelCopy {
+
+    /**
+     * 默认range大小
+     */
+    public static final long DEFAULT_RANGE_SIZE = 64L << 20;
+
+    /**
+     * 每次读写的缓冲区大小
+     */
+    private static final int BUFFER_SIZE = 1 << 20;
+
+    /**
+     * CRC32C 反射多项式
+     */
+    private static final int CRC32C_POLYNOMIAL = 0x82F63B78;
+
+    /**
+     * CRC32 反射多项式
+     */
+    private static final int CRC32_POLYNOMIAL = 0xEDB88320;
+
+    /**
+     * java.util.zip.CRC32C 构造器，Java 8 为null
+     */
+    private static final Constructor<? extends Checksum> CRC32C = crc32c();
+
+    private static final int POLYNOMIAL = null == CRC32C ? CRC32_POLYNOMIAL : CRC32C_POLYNOMIAL;
+
+    /**
+     * 复制并计算校验和
+     *
+     * @param src src
+     * @param dst dst，已存在时覆盖
+     * @return 校验和
+     * @throws IOException IOException
+     */
+    public static long copy(String src, String dst) throws IOException {
+        return copy(Paths.get(src), Paths.get(dst), DEFAULT_RANGE_SIZE, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * 复制并计算校验和
+     *
+     * @param src       src
+     * @param dst       dst，已存在时覆盖
+     * @param rangeSize 每个任务的字节数
+     * @param pool      pool
+     * @return 校验和
+     * @throws IOException IOException
+     */
+    public static long copy(Path src, Path dst, long rangeSize, ForkJoinPool pool) throws IOException {
+        try (FileChannel in = FileChannel.open(src, StandardOpenOption.READ);
+             FileChannel out = FileChannel.open(dst, StandardOpenOption.CREATE, StandardOpenOption.WRITE
+                     , StandardOpenOption.TRUNCATE_EXISTING)) {
+            return run(in, out, rangeSize, pool);
+        }
+    }
+
+    /**
+     * 并行计算文件校验和
+     *
+     * @param path path
+     * @return 校验和
+     * @throws IOException IOException
+     */
+    public static long checksum(String path) throws IOException {
+        return checksum(Paths.get(path), DEFAULT_RANGE_SIZE, ForkJoinPool.commonPool());
+    }
+
+    public static long checksum(Path path, long rangeSize, ForkJoinPool pool) throws IOException {
+        try (FileChannel in = FileChannel.open(path, StandardOpenOption.READ)) {
+            return run(in, null, rangeSize, pool);
+        }
+    }
+
+    /**
+     * 校验和算法
+     *
+     * @return CRC32C 或 CRC32
+     */
+    public static String getAlgorithm() {
+        return null == CRC32C ? "CRC32" : "CRC32C";
+    }
+
+    /**
+     * 新的校验和实例
+     *
+     * @return Checksum
+     */
+    public static Checksum newChecksum() {
+        if (null == CRC32C) {
+            return new CRC32();
+        }
+        try {
+            return CRC32C.newInstance();
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * 合并两段连续数据的校验和 (zlib crc32_combine)
+     *
+     * @param crc1    前一段校验和
+     * @param crc2    后一段校验和
+     * @param length2 后一段长度
+     * @return 两段拼接后的校验和
+     */
+    public static long combine(long crc1, long crc2, long length2) {
+        if (0L >= length2) {
+            return crc1;
+        }
+        final long[] even = new long[32];
+        final long[] odd = new long[32];
+        // 一个0 bit 的算子
+        odd[0] = POLYNOMIAL & 0xFFFFFFFFL;
+        long row = 1L;
+        for (int n = 1; n < 32; n++) {
+            odd[n] = row;
+            row <<= 1;
+        }
+        // 两个0 bit、四个0 bit 的算子
+        square(even, odd);
+        square(odd, even);
+        long length = length2;
+        do {
+            square(even, odd);
+            if (0L != (length & 1L)) {
+                crc1 = times(even, crc1);
+            }
+            length >>= 1;
+            if (0L == length) {
+                break;
+            }
+            square(odd, even);
+            if (0L != (length & 1L)) {
+                crc1 = times(odd, crc1);
+            }
+            length >>= 1;
+        } while (0L != length);
+        return crc1 ^ crc2;
+    }
+
+    private static long run(final FileChannel in, final FileChannel out, final long rangeSize
+            , final ForkJoinPool pool) throws IOException {
+        if (0L >= rangeSize) {
+            throw new RuntimeException("Range size must be positive...");
+        }
+        final long size = in.size();
+        final List<Range> ranges = new ArrayList<>();
+        for (long position = 0L; position < size; position += rangeSize) {
+            ranges.add(new Range(in, out, position, Math.min(rangeSize, size - position)));
+        }
+        if (null != out && 0L < size) {
+            // 预先扩展到最终长度，并发写入不会互相扩展文件
+            out.write(ByteBuffer.wrap(new byte[1]), size - 1);
+        }
+        try {
+            pool.invoke(new RecursiveTask<Void>() {
+                @Override
+                protected Void compute() {
+                    ForkJoinTask.invokeAll(ranges);
+                    return null;
+                }
+            });
+        } catch (RuntimeException e) {
+            // ForkJoin 跨线程重新抛出时会再包一层
+            for (Throwable t = e.getCause(); null != t; t = t.getCause()) {
+                if (t instanceof IOException) {
+                    throw (IOException) t;
+                }
+            }
+            throw e;
+        }
+        long crc = newChecksum().getValue();
+        for (Range range : ranges) {
+            crc = combine(crc, range.join(), range.length);
+        }
+        return crc;
+    }
+
+    /**
+     * 一个range的复制与校验
+     */
+    private static final class Range extends RecursiveTask<Long> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final FileChannel in;
+
+        private final FileChannel out;
+
+        private final long position;
+
+        private final long length;
+
+        private Range(FileChannel in, FileChannel out, long position, long length) {
+            this.in = in;
+            this.out = out;
+            this.position = position;
+            this.length = length;
+        }
+
+        @Override
+        protected Long compute() {
+            final Checksum checksum = newChecksum();
+            final byte[] bytes = BufferPool.acquire(BUFFER_SIZE);
+            try {
+                final ByteBuffer buffer = ByteBuffer.wrap(bytes);
+                for (long done = 0L; done < this.length; ) {
+                    buffer.clear().limit((int) Math.min(bytes.length, this.length - done));
+                    final int n = this.in.read(buffer, this.position + done);
+                    if (-1 == n) {
+                        throw new IOException("File truncated at " + (this.position + done) + "...");
+                    }
+                    checksum.update(bytes, 0, n);
+                    if (null != this.out) {
+                        buffer.flip();
+                        for (long offset = this.position + done; buffer.hasRemaining(); ) {
+                            offset += this.out.write(buffer, offset);
+                        }
+                    }
+                    done += n;
+                }
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            } finally {
+                BufferPool.release(bytes);
+            }
+            return checksum.getValue();
+        }
+    }
+
+    private static long times(final long[] matrix, long vector) {
+        long sum = 0L;
+        for (int i = 0; 0L != vector; i++, vector >>>= 1) {
+            if (0L != (vector & 1L)) {
+                sum ^= matrix[i];
+            }
+        }
+        return sum;
+    }
+
+    private static void square(final long[] square, final long[] matrix) {
+        for (int n = 0; n < 32; n++) {
+            square[n] = times(matrix, matrix[n]);
+        }
+    }
+
+    private static Constructor<? extends Checksum> crc32c() {
+        try {
+            return Class.forName("java.util.zip.CRC32C").asSubclass(Checksum.class).getConstructor();
+        } catch (Exception e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,156 @@
+package com.xcoder.utilities.io;
+
+import java.io.InterruptedIOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Token bucket rate limiter
+ * 令牌按bytesPerSecond匀速补充，最多积攒burst个；acquire先预支再睡眠，不足的部分记为欠账，
+ * 后来的调用排在欠账之后，多个传输共享同一个limiter时按到达顺序分配带宽
+ * <p>
+ * 分组限速：每个传输一个limiter，parent为组的limiter，字节同时从两者扣除，等待较长的一个；
+ * rate &lt;= 0 表示不限速，acquire只读一次volatile
+ *
+ * @author chuck lee
+ */
+public class RateLimiter {
+
+    private static final long NANOS_PER_SECOND = TimeUnit.SECONDS.toNanos(1L);
+
+    private final RateLimiter parent;
+
+    private volatile long bytesPerSecond;
+
+    private volatile long burst;
+
+    /**
+     * 当前令牌数，可以为负(欠账)
+     */
+    private double tokens;
+
+    private long lastRefill = System.nanoTime();
+
+    public RateLimiter(long bytesPerSecond) {
+        this(bytesPerSecond, bytesPerSecond, null);
+    }
+
+    public RateLimiter(long bytesPerSecond, RateLimiter parent) {
+        this(bytesPerSecond, bytesPerSecond, parent);
+    }
+
+    /**
+     * Constructor
+     *
+     * @param bytesPerSecond 每秒字节数，&lt;= 0 不限速
+     * @param burst          最多积攒的字节数，也是限速时单次读取的上限
+     * @param parent         组的limiter，可以为null
+     */
+    public RateLimiter(long bytesPerSecond, long burst, RateLimiter parent) {
+        this.parent = parent;
+        this.bytesPerSecond = bytesPerSecond;
+        this.burst = Math.max(1L, burst);
+        this.tokens = this.burst;
+    }
+
+    /**
+     * 取得length个字节的令牌，不够时睡眠
+     *
+     * @param length 字节数
+     * @throws InterruptedIOException 等待时被中断
+     */
+    public void acquire(int length) throws InterruptedIOException {
+        final long wait = this.reserve(length);
+        if (0L < wait) {
+            try {
+                TimeUnit.NANOSECONDS.sleep(wait);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Rate limit waiting interrupted...");
+            }
+        }
+    }
+
+    /**
+     * 是否限速(包括parent)
+     *
+     * @return 限速返回true
+     */
+    public boolean isLimited() {
+        return 0L < this.bytesPerSecond || (null != this.parent && this.parent.isLimited());
+    }
+
+    /**
+     * 限速时单次读写的字节数上限，避免一次读入远超burst的数据后长时间睡眠
+     *
+     * @param length 缓冲区长度
+     * @return 不超过length
+     */
+    public int chunk(int length) {
+        long chunk = length;
+        for (RateLimiter limiter = this; null != limiter; limiter = limiter.parent) {
+            if (0L < limiter.bytesPerSecond) {
+                chunk = Math.min(chunk, limiter.burst);
+            }
+        }
+        return (int) chunk;
+    }
+
+    public long getBytesPerSecond() {
+        return this.bytesPerSecond;
+    }
+
+    /**
+     * 运行中调整速率，对正在进行的传输立即生效
+     *
+     * @param bytesPerSecond 每秒字节数，&lt;= 0 不限速
+     */
+    public synchronized void setBytesPerSecond(long bytesPerSecond) {
+        this.refill(System.nanoTime());
+        this.bytesPerSecond = bytesPerSecond;
+    }
+
+    public long getBurst() {
+        return this.burst;
+    }
+
+    public synchronized void setBurst(long burst) {
+        this.burst = Math.max(1L, burst);
+        this.tokens = Math.min(this.tokens, this.burst);
+    }
+
+    public RateLimiter getParent() {
+        return this.parent;
+    }
+
+    /**
+     * 预支令牌
+     *
+     * @param length 字节数
+     * @return 需要睡眠的纳秒数，自身与parent取较大者
+     */
+    private long reserve(final int length) {
+        long wait = 0L;
+        if (0L < this.bytesPerSecond) {
+            synchronized (this) {
+                final long now = System.nanoTime();
+                this.refill(now);
+                this.tokens -= length;
+                if (0D > this.tokens && 0L < this.bytesPerSecond) {
+                    wait = (long) (-this.tokens * NANOS_PER_SECOND / this.bytesPerSecond);
+                }
+            }
+        }
+        if (null != this.parent) {
+            wait = Math.max(wait, this.parent.reserve(length));
+        }
+        return wait;
+    }
+
+    private void refill(final long now) {
+        final long rate = this.bytesPerSecond;
+        if (0L < rate) {
+            this.tokens = Math.min(this.burst, this.tokens + (double) (now - this.lastRefill) * rate / NANOS_PER_SECOND);
+        }
+        this.lastRefill = now;
+    }
+}
@@ -0,0 +1,209 @@
+package com.xcoder.utilities.io;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.SelectableChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Read readiness
+ * 由SocketChannel创建的Socket用Selector等待可读，数据到达即返回；
+ * 普通Socket用SO_TIMEOUT阻塞读；其它InputStream只能退避轮询available()
+ *
+ * @author chuck lee
+ */
+public class Readiness {
+
+    /**
+     * 轮询退避最长间隔
+     */
+    private static final long MAX_BACKOFF = 16L;
+
+    /**
+     * 空闲Selector池，只用于临时注册单个通道；池满时归还的Selector直接关闭，
+     * 打开的Selector数不超过池大小加正在等待的线程数，线程结束不会遗留文件描述符
+     */
+    private static final BlockingQueue<Selector> SELECTORS = new ArrayBlockingQueue<>(
+            Math.max(2, Runtime.getRuntime().availableProcessors() << 1));
+
+    /**
+     * 等待通道可读
+     * 阻塞模式的通道在等待期间临时切换为非阻塞，返回前恢复
+     *
+     * @param channel channel
+     * @param timeout 最长等待毫秒数，&lt;= 0 一直等待
+     * @return 可读(包括EOF)返回true，超时返回false
+     * @throws IOException IOException
+     */
+    public static boolean awaitReadable(final SelectableChannel channel, final long timeout) throws IOException {
+        final Selector selector = selector();
+        try {
+            return awaitReadable(channel, timeout, selector);
+        } catch (IOException | RuntimeException e) {
+            Io.closeableClose(selector);
+            throw e;
+        } finally {
+            if (selector.isOpen() && !SELECTORS.offer(selector)) {
+                Io.closeableClose(selector);
+            }
+        }
+    }
+
+    private static boolean awaitReadable(final SelectableChannel channel, final long timeout
+            , final Selector selector) throws IOException {
+        final boolean blocking = channel.isBlocking();
+        final SelectionKey key;
+        synchronized (channel.blockingLock()) {
+            if (blocking) {
+                channel.configureBlocking(false);
+            }
+            try {
+                key = channel.register(selector, SelectionKey.OP_READ);
+            } catch (IOException | RuntimeException e) {
+                if (blocking) {
+                    channel.configureBlocking(true);
+                }
+                throw e;
+            }
+        }
+        try {
+            final long deadline = System.currentTimeMillis() + timeout;
+            for (; ; ) {
+                final long wait = 0L < timeout ? deadline - System.currentTimeMillis() : 0L;
+                if (0L < timeout && 0L >= wait) {
+                    return false;
+                }
+                if (0 < selector.select(wait) && key.isReadable()) {
+                    return true;
+                }
+                if (Thread.currentThread().isInterrupted()) {
+                    throw new IOException("Waiting readable interrupted...");
+                }
+            }
+        } finally {
+            key.cancel();
+            // 取消的key在下一次select时才注销，注销后才能切回阻塞
+            selector.selectNow();
+            if (blocking) {
+                synchronized (channel.blockingLock()) {
+                    channel.configureBlocking(true);
+                }
+            }
+        }
+    }
+
+    /**
+     * 等待Socket可读，没有通道的Socket无法不消费数据地等待，退化为轮询available()
+     *
+     * @param socket  socket
+     * @param timeout 最长等待毫秒数，&lt;= 0 一直等待
+     * @return 可读返回true，超时返回false
+     * @throws IOException IOException
+     */
+    public static boolean awaitReadable(final Socket socket, final long timeout) throws IOException {
+        if (null != socket.getChannel()) {
+            return awaitReadable(socket.getChannel(), timeout);
+        }
+        return awaitReadable(socket.getInputStream(), timeout);
+    }
+
+    /**
+     * 等待InputStream有可读字节，间隔从1ms指数退避到16ms
+     *
+     * @param is      InputStream
+     * @param timeout 最长等待毫秒数，&lt;= 0 一直等待
+     * @return 可读返回true，超时返回false
+     * @throws IOException IOException
+     */
+    public static boolean awaitReadable(final InputStream is, final long timeout) throws IOException {
+        return awaitReadable(is, timeout, MAX_BACKOFF);
+    }
+
+    /**
+     * 等待InputStream有可读字节，间隔从1ms指数退避到maxBackoff
+     *
+     * @param is         InputStream
+     * @param timeout    最长等待毫秒数，&lt;= 0 一直等待
+     * @param maxBackoff 最长轮询间隔
+     * @return 可读返回true，超时返回false
+     * @throws IOException IOException
+     */
+    public static boolean awaitReadable(final InputStream is, final long timeout, final long maxBackoff) throws IOException {
+        final long deadline = System.currentTimeMillis() + timeout;
+        for (long backoff = 1L; 1 > is.available(); backoff = Math.max(1L, Math.min(maxBackoff, backoff << 1))) {
+            final long remain = deadline - System.currentTimeMillis();
+            if (0L < timeout && 0L >= remain) {
+                return false;
+            }
+            try {
+                TimeUnit.MILLISECONDS.sleep(0L < timeout ? Math.min(backoff, remain) : backoff);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Waiting readable interrupted...", e);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 带超时的读，数据到达即返回
+     *
+     * @param socket  socket
+     * @param buffer  buffer
+     * @param timeout 最长等待毫秒数，&lt;= 0 一直等待
+     * @return 读取字节数，超时返回0，EOF返回-1
+     * @throws IOException IOException
+     */
+    public static int read(final Socket socket, final byte[] buffer, final long timeout) throws IOException {
+        if (null != socket.getChannel()) {
+            if (!awaitReadable(socket.getChannel(), timeout)) {
+                return 0;
+            }
+            return socket.getChannel().read(ByteBuffer.wrap(buffer));
+        }
+        final int soTimeout = socket.getSoTimeout();
+        socket.setSoTimeout((int) Math.min(Integer.MAX_VALUE, Math.max(0L, timeout)));
+        try {
+            return socket.getInputStream().read(buffer);
+        } catch (SocketTimeoutException e) {
+            return 0;
+        } finally {
+            socket.setSoTimeout(soTimeout);
+        }
+    }
+
+    /**
+     * 带超时的通道读，数据到达即返回
+     *
+     * @param channel channel
+     * @param buffer  buffer
+     * @param timeout 最长等待毫秒数，&lt;= 0 一直等待
+     * @param <C>     可选择的可读通道
+     * @return 读取字节数，超时返回0，EOF返回-1
+     * @throws IOException IOException
+     */
+    public static <C extends SelectableChannel & ReadableByteChannel> int read(final C channel, final ByteBuffer buffer
+            , final long timeout) throws IOException {
+        if (!awaitReadable(channel, timeout)) {
+            return 0;
+        }
+        return channel.read(buffer);
+    }
+
+    private static Selector selector() throws IOException {
+        for (Selector selector = SELECTORS.poll(); null != selector; selector = SELECTORS.poll()) {
+            if (selector.isOpen()) {
+                return selector;
+            }
+        }
+        return Selector.open();
+    }
+}
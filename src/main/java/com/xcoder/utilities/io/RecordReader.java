@@ -0,0 +1,224 @@
+package com.xcoder.utilities.io;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Streaming record reader
+ * 从字节缓冲区直接解码(每个reader一个CharsetDecoder，缓冲区从BufferPool借用)，按分隔符切分记录，
+ * 记录保留结尾的分隔符(最后一条可能没有)，拼接所有记录即为原文；内存只与最长记录有关
+ *
+ * @author chuck lee
+ */
+public class RecordReader implements Iterator<String>, Closeable {
+
+    private static final int BYTE_BUFFER_SIZE = 1 << 16;
+
+    private static final int CHAR_BUFFER_SIZE = 1 << 13;
+
+    private final ReadableByteChannel channel;
+
+    private final CharsetDecoder decoder;
+
+    private final char[] delimiter;
+
+    private final int maxRecordLength;
+
+    private final byte[] bytes = BufferPool.acquire(BYTE_BUFFER_SIZE);
+
+    private final ByteBuffer byteBuffer = ByteBuffer.wrap(this.bytes);
+
+    private final CharBuffer charBuffer = CharBuffer.allocate(CHAR_BUFFER_SIZE);
+
+    private final StringBuilder record = new StringBuilder();
+
+    private boolean eof;
+
+    /**
+     * decoder 已flush，不再有字符
+     */
+    private boolean flushed;
+
+    private boolean closed;
+
+    /**
+     * 预读的下一条
+     */
+    private String next;
+
+    public RecordReader(InputStream is, Charset charset) {
+        this(Channels.newChannel(is), charset, "\n", Integer.MAX_VALUE);
+    }
+
+    /**
+     * Constructor
+     *
+     * @param channel         channel
+     * @param charset         charset
+     * @param delimiter       记录分隔符，如 "\n"、"\r\n"、"\u0000"
+     * @param maxRecordLength 单条记录最大字符数(含分隔符)，超过时抛出IOException
+     */
+    public RecordReader(ReadableByteChannel channel, Charset charset, String delimiter, int maxRecordLength) {
+        if (null == delimiter || delimiter.isEmpty()) {
+            throw new RuntimeException("Delimiter can not be empty...");
+        }
+        this.channel = channel;
+        this.decoder = charset.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        this.delimiter = delimiter.toCharArray();
+        this.maxRecordLength = maxRecordLength;
+        this.byteBuffer.limit(0);
+        this.charBuffer.limit(0);
+    }
+
+    /**
+     * 按行读取，保留 \n 或 \r\n
+     *
+     * @param is      is
+     * @param charset charset
+     * @return 关闭时关闭is
+     */
+    public static Stream<String> lines(InputStream is, Charset charset) {
+        return new RecordReader(is, charset).stream();
+    }
+
+    /**
+     * 惰性的记录流，关闭流时关闭reader
+     *
+     * @return Stream
+     */
+    public Stream<String> stream() {
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(this
+                , Spliterator.ORDERED | Spliterator.NONNULL), false).onClose(this::close);
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (null == this.next) {
+            try {
+                this.next = this.readRecord();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        return null != this.next;
+    }
+
+    @Override
+    public String next() {
+        if (!this.hasNext()) {
+            throw new NoSuchElementException();
+        }
+        final String record = this.next;
+        this.next = null;
+        return record;
+    }
+
+    /**
+     * 读取下一条记录
+     *
+     * @return 记录，结束返回null
+     * @throws IOException IOException
+     */
+    public String readRecord() throws IOException {
+        if (null != this.next) {
+            final String record = this.next;
+            this.next = null;
+            return record;
+        }
+        final StringBuilder record = this.record;
+        record.setLength(0);
+        final char last = this.delimiter[this.delimiter.length - 1];
+        for (; ; ) {
+            while (this.charBuffer.hasRemaining()) {
+                final char c = this.charBuffer.get();
+                record.append(c);
+                if (last == c && this.endsWithDelimiter(record)) {
+                    return record.toString();
+                }
+                if (this.maxRecordLength <= record.length()) {
+                    throw new IOException("Record longer than " + this.maxRecordLength + " chars...");
+                }
+            }
+            if (!this.fill()) {
+                return 0 == record.length() ? null : record.toString();
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        if (this.closed) {
+            return;
+        }
+        this.closed = true;
+        BufferPool.release(this.bytes);
+        Io.closeableClose(this.channel);
+    }
+
+    /**
+     * 读取并解码到charBuffer
+     *
+     * @return 还有字符
+     * @throws IOException IOException
+     */
+    private boolean fill() throws IOException {
+        if (this.closed || this.flushed) {
+            return false;
+        }
+        this.charBuffer.clear();
+        while (0 == this.charBuffer.position()) {
+            if (this.eof) {
+                // 末尾不完整的字节序列按REPLACE输出
+                // charBuffer 满了下次再继续
+                if (!this.decoder.decode(this.byteBuffer, this.charBuffer, true).isOverflow()) {
+                    this.flushed = this.decoder.flush(this.charBuffer).isUnderflow();
+                }
+                break;
+            }
+            this.byteBuffer.compact();
+            final int n = this.channel.read(this.byteBuffer);
+            this.byteBuffer.flip();
+            if (-1 == n) {
+                this.eof = true;
+                continue;
+            }
+            final CoderResult result = this.decoder.decode(this.byteBuffer, this.charBuffer, false);
+            if (result.isError()) {
+                result.throwException();
+            }
+        }
+        this.charBuffer.flip();
+        return this.charBuffer.hasRemaining();
+    }
+
+    private boolean endsWithDelimiter(final StringBuilder record) {
+        final int offset = record.length() - this.delimiter.length;
+        if (0 > offset) {
+            return false;
+        }
+        for (int i = 0; i < this.delimiter.length; i++) {
+            if (this.delimiter[i] != record.charAt(offset + i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,259 @@
+package com.xcoder.utilities.io;
+
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * Transfer engine
+ * 读到EOF为止，处理部分读写，缓冲区从BufferPool借用；任一端是FileChannel时用transferTo/transferFrom，数据不进入Java堆
+ * 通道需为阻塞模式
+ *
+ * @author chuck lee
+ */
+public class Transfer {
+
+    /**
+     * 默认缓冲区大小
+     */
+    public static final int DEFAULT_BUFFER_SIZE = 1 << 16;
+
+    /**
+     * transferTo/transferFrom 单次最大字节数
+     */
+    private static final long TRANSFER_CHUNK = 8L << 20;
+
+    /**
+     * InputStream 到 OutputStream 直到EOF，两端都是文件流时走FileChannel
+     *
+     * @param is InputStream
+     * @param os OutputStream
+     * @return 字节数
+     * @throws IOException IOException
+     */
+    public static long pump(final InputStream is, final OutputStream os) throws IOException {
+        if (is instanceof FileInputStream && os instanceof FileOutputStream) {
+            return transfer(((FileInputStream) is).getChannel(), ((FileOutputStream) os).getChannel());
+        }
+        final byte[] buffer = BufferPool.acquire(DEFAULT_BUFFER_SIZE);
+        try {
+            return pump(is, os, buffer);
+        } finally {
+            BufferPool.release(buffer);
+        }
+    }
+
+    /**
+     * InputStream 到 OutputStream 直到EOF
+     *
+     * @param is     InputStream
+     * @param os     OutputStream
+     * @param buffer 调用方提供的缓冲区
+     * @return 字节数
+     * @throws IOException IOException
+     */
+    public static long pump(final InputStream is, final OutputStream os, final byte[] buffer) throws IOException {
+        long count = 0L;
+        for (int n = is.read(buffer); -1 != n; n = is.read(buffer)) {
+            os.write(buffer, 0, n);
+            count += n;
+        }
+        return count;
+    }
+
+    /**
+     * InputStream 到 OutputStream 直到EOF，按limiter限速；limiter为null或不限速时同pump(is, os)
+     *
+     * @param is      InputStream
+     * @param os      OutputStream
+     * @param limiter limiter
+     * @return 字节数
+     * @throws IOException IOException
+     */
+    public static long pump(final InputStream is, final OutputStream os, final RateLimiter limiter) throws IOException {
+        if (null == limiter || !limiter.isLimited()) {
+            return pump(is, os);
+        }
+        final byte[] buffer = BufferPool.acquire(DEFAULT_BUFFER_SIZE);
+        try {
+            return pump(is, os, buffer, limiter);
+        } finally {
+            BufferPool.release(buffer);
+        }
+    }
+
+    /**
+     * InputStream 到 OutputStream 直到EOF，每次读到数据后先取令牌再写
+     *
+     * @param is      InputStream
+     * @param os      OutputStream
+     * @param buffer  调用方提供的缓冲区
+     * @param limiter limiter，运行中可调整速率
+     * @return 字节数
+     * @throws IOException IOException
+     */
+    public static long pump(final InputStream is, final OutputStream os, final byte[] buffer
+            , final RateLimiter limiter) throws IOException {
+        long count = 0L;
+        for (int n = is.read(buffer, 0, limiter.chunk(buffer.length)); -1 != n
+                ; n = is.read(buffer, 0, limiter.chunk(buffer.length))) {
+            limiter.acquire(n);
+            os.write(buffer, 0, n);
+            count += n;
+        }
+        return count;
+    }
+
+    /**
+     * 通道到通道直到EOF
+     * 源为FileChannel时从其当前position transferTo，目标为FileChannel时在其当前position transferFrom，
+     * 其它情况经直接缓冲区复制；结束后FileChannel的position移到已传输末尾
+     *
+     * @param src src
+     * @param dst dst
+     * @return 字节数
+     * @throws IOException IOException
+     */
+    public static long transfer(final ReadableByteChannel src, final WritableByteChannel dst) throws IOException {
+        if (src instanceof FileChannel) {
+            return transferTo((FileChannel) src, dst);
+        }
+        if (dst instanceof FileChannel) {
+            return transferFrom(src, (FileChannel) dst);
+        }
+        final ByteBuffer buffer = BufferPool.acquireDirect(DEFAULT_BUFFER_SIZE);
+        try {
+            return copy(src, dst, buffer);
+        } finally {
+            BufferPool.release(buffer);
+        }
+    }
+
+    /**
+     * 经缓冲区复制直到EOF，处理部分写
+     *
+     * @param src    src
+     * @param dst    dst
+     * @param buffer buffer
+     * @return 字节数
+     * @throws IOException IOException
+     */
+    public static long copy(final ReadableByteChannel src, final WritableByteChannel dst
+            , final ByteBuffer buffer) throws IOException {
+        long count = 0L;
+        buffer.clear();
+        for (int n = src.read(buffer); -1 != n; n = src.read(buffer)) {
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                count += dst.write(buffer);
+            }
+            buffer.clear();
+        }
+        return count;
+    }
+
+    /**
+     * 经缓冲区复制直到EOF，按limiter限速
+     *
+     * @param src     src
+     * @param dst     dst
+     * @param buffer  buffer
+     * @param limiter limiter
+     * @return 字节数
+     * @throws IOException IOException
+     */
+    public static long copy(final ReadableByteChannel src, final WritableByteChannel dst
+            , final ByteBuffer buffer, final RateLimiter limiter) throws IOException {
+        if (null == limiter) {
+            return copy(src, dst, buffer);
+        }
+        long count = 0L;
+        for (; ; ) {
+            buffer.clear().limit(limiter.chunk(buffer.capacity()));
+            final int n = src.read(buffer);
+            if (-1 == n) {
+                return count;
+            }
+            limiter.acquire(n);
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                count += dst.write(buffer);
+            }
+        }
+    }
+
+    private static long transferTo(final FileChannel src, final WritableByteChannel dst) throws IOException {
+        final long start = src.position();
+        long position = start;
+        for (long size = src.size(); position < size; ) {
+            final long n = src.transferTo(position, Math.min(TRANSFER_CHUNK, size - position), dst);
+            if (0L == n) {
+                final long current = src.size();
+                if (current == size) {
+                    // 文件没有被截断却没有进展(目标通道不接受transferTo)，剩余部分经缓冲区复制
+                    position += copy(src, position, size, dst);
+                    break;
+                }
+                // 文件被截断
+                size = current;
+            }
+            position += n;
+        }
+        src.position(position);
+        return position - start;
+    }
+
+    /**
+     * 从position起经直接缓冲区复制到size或EOF，不改变src的position
+     *
+     * @param src      src
+     * @param position 起始位置
+     * @param size     结束位置
+     * @param dst      dst
+     * @return 字节数
+     * @throws IOException IOException
+     */
+    private static long copy(final FileChannel src, final long position, final long size
+            , final WritableByteChannel dst) throws IOException {
+        final ByteBuffer buffer = BufferPool.acquireDirect(DEFAULT_BUFFER_SIZE);
+        try {
+            long p = position;
+            while (p < size) {
+                buffer.clear().limit((int) Math.min(buffer.capacity(), size - p));
+                final int n = src.read(buffer, p);
+                if (0 >= n) {
+                    break;
+                }
+                buffer.flip();
+                while (buffer.hasRemaining()) {
+                    dst.write(buffer);
+                }
+                p += n;
+            }
+            return p - position;
+        } finally {
+            BufferPool.release(buffer);
+        }
+    }
+
+    private static long transferFrom(final ReadableByteChannel src, final FileChannel dst) throws IOException {
+        final long start = dst.position();
+        long position = start;
+        for (; ; ) {
+            // 阻塞源只在EOF时返回0
+            final long n = dst.transferFrom(src, position, TRANSFER_CHUNK);
+            if (0L == n) {
+                break;
+            }
+            position += n;
+        }
+        dst.position(position);
+        return position - start;
+    }
+}
@@ -2,6 +2,7 @@ package com.xcoder.utilities.net;
 
 import com.xcoder.utilities.IUniversal;
 import com.xcoder.utilities.common.MixedUtensil;
+import com.xcoder.utilities.io.RecordReader;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
@@ -9,12 +10,11 @@ import javax.net.ssl.SSLContext;
 import javax.net.ssl.SSLSocketFactory;
 import javax.net.ssl.TrustManager;
 import javax.net.ssl.X509TrustManager;
-import java.io.BufferedReader;
 import java.io.IOException;
-import java.io.InputStreamReader;
 import java.io.OutputStream;
 import java.net.HttpURLConnection;
 import java.net.URL;
+import java.nio.charset.Charset;
 import java.security.KeyManagementException;
 import java.security.NoSuchAlgorithmException;
 import java.security.NoSuchProviderException;
@@ -140,11 +140,10 @@ public abstract class AbstractHttpClient implements IUniversal {
 
             String charsetIn = this.getCharsetIn();
             LOGGER.debug("response charset:" + charsetIn);
-            try (InputStreamReader isr = new InputStreamReader(conn.getInputStream(), charsetIn);
-                 BufferedReader br = new BufferedReader(isr)) {
+            try (RecordReader reader = new RecordReader(conn.getInputStream(), Charset.forName(charsetIn))) {
                 int capacity = this.getCapacity();
                 StringBuilder builder = new StringBuilder(capacity);
-                for (String line = br.readLine(); null != line; line = br.readLine()) {
+                for (String line = reader.readRecord(); null != line; line = reader.readRecord()) {
                     builder.append(line);
                 }
                 String resRst = builder.toString();
@@ -0,0 +1,109 @@
+package com.xcoder.utilities.net.napt;
+
+import java.net.InetSocketAddress;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * LoadBalancer 的一个后端，记录活动连接数和被动健康检查状态
+ *
+ * @author chuck lee
+ */
+public class Backend {
+
+    private final InetSocketAddress address;
+
+    private final AtomicInteger activeCount = new AtomicInteger();
+
+    private final LongAdder connectionCount = new LongAdder();
+
+    private final LongAdder failureCount = new LongAdder();
+
+    /**
+     * 连续失败次数，成功时清零
+     */
+    private final AtomicInteger consecutiveFailures = new AtomicInteger();
+
+    /**
+     * 摘除到此时间为止
+     */
+    private final AtomicLong ejectedUntil = new AtomicLong();
+
+    public Backend(String host, int port) {
+        this.address = new InetSocketAddress(host, port);
+    }
+
+    public InetSocketAddress getAddress() {
+        return this.address;
+    }
+
+    /**
+     * 是否可用
+     *
+     * @param now 当前毫秒数
+     * @return 未被摘除返回true
+     */
+    public boolean isAvailable(long now) {
+        return now >= this.ejectedUntil.get();
+    }
+
+    public int getActiveCount() {
+        return this.activeCount.get();
+    }
+
+    public long getConnectionCount() {
+        return this.connectionCount.sum();
+    }
+
+    public long getFailureCount() {
+        return this.failureCount.sum();
+    }
+
+    public long getEjectedUntil() {
+        return this.ejectedUntil.get();
+    }
+
+    @Override
+    public String toString() {
+        return this.address.getHostString() + ":" + this.address.getPort();
+    }
+
+    void acquire() {
+        this.activeCount.incrementAndGet();
+        this.connectionCount.increment();
+    }
+
+    void release() {
+        this.activeCount.decrementAndGet();
+    }
+
+    void succeeded() {
+        this.consecutiveFailures.set(0);
+    }
+
+    /**
+     * 记录一次失败，连续失败达到threshold时摘除ejectMillis；
+     * 摘除结束后计数不清零，再失败一次立即重新摘除；摘除期间的失败不延长摘除
+     *
+     * @param threshold   threshold
+     * @param ejectMillis ejectMillis
+     * @return 本次由可用转为摘除返回true，并发失败中只有一个返回true
+     */
+    boolean failed(final int threshold, final long ejectMillis) {
+        this.failureCount.increment();
+        if (threshold > this.consecutiveFailures.incrementAndGet()) {
+            return false;
+        }
+        final long now = System.currentTimeMillis();
+        for (; ; ) {
+            final long until = this.ejectedUntil.get();
+            if (now < until) {
+                return false;
+            }
+            if (this.ejectedUntil.compareAndSet(until, now + ejectMillis)) {
+                return true;
+            }
+        }
+    }
+}
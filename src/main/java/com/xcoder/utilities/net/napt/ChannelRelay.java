@@ -0,0 +1,108 @@
+package com.xcoder.utilities.net.napt;
+
+import com.xcoder.utilities.io.BufferPool;
+import com.xcoder.utilities.io.Io;
+import com.xcoder.utilities.io.Transfer;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+/**
+ * SocketChannel relay
+ * 两个方向共用一块直接缓冲区(各占一半)，数据在内核与直接内存之间移动，不经过Java堆；
+ * 流方式每次read/write都要在临时直接缓冲区和byte[]之间各复制一次
+ * <p>
+ * 通道需为阻塞模式，行为与 Napt.s2s 相同：一端EOF后半关闭另一端输出，两个方向都结束后关闭
+ *
+ * @author chuck lee
+ */
+public class ChannelRelay {
+
+    /**
+     * 每个方向的默认缓冲区大小
+     */
+    public static final int DEFAULT_BUFFER_SIZE = 1 << 16;
+
+    public static long relay(SocketChannel channel0, SocketChannel channel1) {
+        return relay(channel0, channel1, DEFAULT_BUFFER_SIZE);
+    }
+
+    /**
+     * 双向转发直到两个方向都结束，反方向在 Napt 共享的有界线程池上；
+     * 等待时被中断则关闭两端，仍等反方向结束后再归还缓冲区，并保留中断状态
+     *
+     * @param channel0   channel0
+     * @param channel1   channel1
+     * @param bufferSize 每个方向的缓冲区大小
+     * @return 两个方向的字节数
+     */
+    public static long relay(final SocketChannel channel0, final SocketChannel channel1, final int bufferSize) {
+        final ByteBuffer buffer = BufferPool.acquireDirect(bufferSize << 1);
+        final ByteBuffer buffer01 = slice(buffer, 0, bufferSize);
+        final ByteBuffer buffer10 = slice(buffer, bufferSize, bufferSize);
+        final Future<Long> reverse;
+        try {
+            reverse = Napt.Reverse.submit(() -> pipe(channel1, channel0, buffer10));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            Io.closeableClose(channel1, channel0);
+            BufferPool.release(buffer);
+            return 0L;
+        }
+        long count = pipe(channel0, channel1, buffer01);
+        boolean interrupted = false;
+        for (; ; ) {
+            try {
+                count += reverse.get();
+                break;
+            } catch (InterruptedException e) {
+                // 关闭后反方向很快结束，缓冲区仍在使用，不能提前归还
+                interrupted = true;
+                Io.closeableClose(channel1, channel0);
+            } catch (ExecutionException e) {
+                e.printStackTrace();
+                break;
+            }
+        }
+        Io.closeableClose(channel1, channel0);
+        BufferPool.release(buffer);
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        return count;
+    }
+
+    /**
+     * 单方向转发直到EOF，然后半关闭dst的输出
+     *
+     * @param src    src
+     * @param dst    dst
+     * @param buffer 直接缓冲区
+     * @return 字节数
+     */
+    public static long pipe(final SocketChannel src, final SocketChannel dst, final ByteBuffer buffer) {
+        long count = 0L;
+        try {
+            count = Transfer.copy(src, dst, buffer);
+        } catch (Throwable t) {
+            t.printStackTrace();
+        } finally {
+            try {
+                if (dst.isOpen()) {
+                    dst.shutdownOutput();
+                }
+            } catch (Throwable t) {
+                t.printStackTrace();
+            }
+        }
+        return count;
+    }
+
+    private static ByteBuffer slice(final ByteBuffer buffer, final int offset, final int length) {
+        final ByteBuffer duplicate = buffer.duplicate();
+        duplicate.limit(offset + length).position(offset);
+        return duplicate.slice();
+    }
+}
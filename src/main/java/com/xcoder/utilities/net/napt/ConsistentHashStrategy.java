@@ -0,0 +1,103 @@
+package com.xcoder.utilities.net.napt;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.List;
+import java.util.TreeMap;
+
+/**
+ * 按客户端IP一致性哈希，同一客户端总是落到同一后端；
+ * 每个后端在环上有多个虚拟节点，后端被摘除时顺时针取下一个可用的，只影响原本落在它上面的客户端
+ *
+ * @author chuck lee
+ */
+public class ConsistentHashStrategy implements IBalanceStrategy {
+
+    /**
+     * 默认每个后端的虚拟节点数
+     */
+    public static final int DEFAULT_REPLICAS = 160;
+
+    private final int replicas;
+
+    /**
+     * 环，按backends列表懒构建
+     */
+    private volatile Ring ring;
+
+    public ConsistentHashStrategy() {
+        this(DEFAULT_REPLICAS);
+    }
+
+    public ConsistentHashStrategy(int replicas) {
+        if (0 >= replicas) {
+            throw new RuntimeException("Replicas must be positive...");
+        }
+        this.replicas = replicas;
+    }
+
+    @Override
+    public Backend select(List<Backend> backends, InetSocketAddress client, boolean available) {
+        Ring ring = this.ring;
+        if (null == ring || ring.backends != backends) {
+            ring = new Ring(backends, this.replicas);
+            this.ring = ring;
+        }
+        final long now = System.currentTimeMillis();
+        final Iterator<Backend> tail = ring.nodes.tailMap(hash(client)).values().iterator();
+        final Iterator<Backend> head = ring.nodes.values().iterator();
+        for (int i = 0, size = ring.nodes.size(); i < size; i++) {
+            final Backend backend = tail.hasNext() ? tail.next() : head.next();
+            if (!available || backend.isAvailable(now)) {
+                return backend;
+            }
+        }
+        return null;
+    }
+
+    private static int hash(final InetSocketAddress client) {
+        final InetAddress address = client.getAddress();
+        return null == address ? hash(client.getHostString().getBytes(StandardCharsets.UTF_8)) : hash(address.getAddress());
+    }
+
+    /**
+     * FNV-1a 后接 murmur3 fmix32，短输入也分布均匀
+     *
+     * @param bytes bytes
+     * @return hash
+     */
+    private static int hash(final byte[] bytes) {
+        int h = 0x811C9DC5;
+        for (byte b : bytes) {
+            h = (h ^ (b & 0xFF)) * 0x01000193;
+        }
+        h ^= h >>> 16;
+        h *= 0x85EBCA6B;
+        h ^= h >>> 13;
+        h *= 0xC2B2AE35;
+        h ^= h >>> 16;
+        return h;
+    }
+
+    /**
+     * 哈希环
+     */
+    private static final class Ring {
+
+        private final List<Backend> backends;
+
+        private final TreeMap<Integer, Backend> nodes = new TreeMap<>();
+
+        private Ring(List<Backend> backends, int replicas) {
+            this.backends = backends;
+            for (Backend backend : backends) {
+                for (int i = 0; i < replicas; i++) {
+                    // 冲突时保留先加入的
+                    this.nodes.putIfAbsent(hash((backend + "#" + i).getBytes(StandardCharsets.UTF_8)), backend);
+                }
+            }
+        }
+    }
+}
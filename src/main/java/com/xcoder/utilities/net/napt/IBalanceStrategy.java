@@ -0,0 +1,22 @@
+package com.xcoder.utilities.net.napt;
+
+import java.net.InetSocketAddress;
+import java.util.List;
+
+/**
+ * LoadBalancer 选择后端的策略
+ *
+ * @author chuck lee
+ */
+public interface IBalanceStrategy {
+
+    /**
+     * 选择一个后端
+     *
+     * @param backends  全部后端，按配置顺序，不会变化
+     * @param client    客户端地址
+     * @param available 只考虑可用(未被摘除)的后端；所有后端都被摘除时为false
+     * @return 后端，没有符合条件的后端时返回null
+     */
+    Backend select(List<Backend> backends, InetSocketAddress client, boolean available);
+}
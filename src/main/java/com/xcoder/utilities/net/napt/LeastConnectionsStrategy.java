@@ -0,0 +1,33 @@
+package com.xcoder.utilities.net.napt;
+
+import java.net.InetSocketAddress;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 活动连接最少的后端，相同时从轮转的起点开始取第一个，避免总是选中靠前的后端
+ *
+ * @author chuck lee
+ */
+public class LeastConnectionsStrategy implements IBalanceStrategy {
+
+    private final AtomicInteger next = new AtomicInteger();
+
+    @Override
+    public Backend select(List<Backend> backends, InetSocketAddress client, boolean available) {
+        final int size = backends.size();
+        final int start = this.next.getAndIncrement() & Integer.MAX_VALUE;
+        final long now = System.currentTimeMillis();
+        Backend least = null;
+        for (int i = 0; i < size; i++) {
+            final Backend backend = backends.get((start + i) % size);
+            if (available && !backend.isAvailable(now)) {
+                continue;
+            }
+            if (null == least || backend.getActiveCount() < least.getActiveCount()) {
+                least = backend;
+            }
+        }
+        return least;
+    }
+}
@@ -0,0 +1,177 @@
+package com.xcoder.utilities.net.napt;
+
+import com.xcoder.utilities.io.Io;
+
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.InetSocketAddress;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+/**
+ * L4 load balancer
+ * 按策略(轮询、最少连接、一致性哈希)为每个客户端连接选择后端，在NaptEngine上转发；
+ * 被动健康检查：连接后端失败或超时计为失败，连续失败failureThreshold次摘除ejectMillis，
+ * 摘除期满后重新参与选择，再失败一次立即重新摘除，连接成功清零；所有后端都被摘除时仍在全部后端中选择
+ * <p>
+ * 连接失败时客户端连接随之关闭，不重试其它后端
+ *
+ * @author chuck lee
+ */
+public class LoadBalancer {
+
+    /**
+     * 默认连续失败次数
+     */
+    public static final int DEFAULT_FAILURE_THRESHOLD = 3;
+
+    /**
+     * 默认摘除时长
+     */
+    public static final long DEFAULT_EJECT_MILLIS = 10000L;
+
+    /**
+     * 默认连接超时
+     */
+    public static final long DEFAULT_CONNECT_TIMEOUT = 3000L;
+
+    private final List<Backend> backends;
+
+    private final IBalanceStrategy strategy;
+
+    private int failureThreshold = DEFAULT_FAILURE_THRESHOLD;
+
+    private long ejectMillis = DEFAULT_EJECT_MILLIS;
+
+    private long connectTimeout = DEFAULT_CONNECT_TIMEOUT;
+
+    public LoadBalancer(List<String> backends) {
+        this(backends, new RoundRobinStrategy());
+    }
+
+    /**
+     * Constructor
+     *
+     * @param backends "host:port" 列表
+     * @param strategy strategy
+     */
+    public LoadBalancer(List<String> backends, IBalanceStrategy strategy) {
+        if (null == backends || backends.isEmpty()) {
+            throw new RuntimeException("Backends can not be empty...");
+        }
+        final List<Backend> list = new ArrayList<>(backends.size());
+        for (String backend : backends) {
+            list.add(parse(backend));
+        }
+        this.backends = Collections.unmodifiableList(list);
+        this.strategy = strategy;
+    }
+
+    /**
+     * 选择后端
+     *
+     * @param client 客户端地址
+     * @return 后端
+     */
+    public Backend select(InetSocketAddress client) {
+        final Backend backend = this.strategy.select(this.backends, client, true);
+        return null == backend ? this.strategy.select(this.backends, client, false) : backend;
+    }
+
+    /**
+     * 为channel0选择后端并在engine上连接转发，连上时清零后端的连续失败，结束时更新连接数，连接失败计入健康状态
+     *
+     * @param channel0 已接受的客户端连接
+     * @param engine   engine
+     * @return 同 NaptEngine.connect
+     */
+    public CompletableFuture<Long> forward(final SocketChannel channel0, final NaptEngine engine) {
+        final Backend backend;
+        try {
+            backend = this.select((InetSocketAddress) channel0.getRemoteAddress());
+        } catch (IOException e) {
+            Io.closeableClose(channel0);
+            final CompletableFuture<Long> future = new CompletableFuture<>();
+            future.completeExceptionally(e);
+            return future;
+        }
+        backend.acquire();
+        // 连上即清零连续失败，不等转发结束
+        final CompletableFuture<Long> future = engine.connect(channel0, backend.getAddress(), this.connectTimeout
+                , backend::succeeded);
+        future.whenComplete((count, t) -> {
+            backend.release();
+            if (isConnectFailure(t) && backend.failed(this.failureThreshold, this.ejectMillis)) {
+                new RuntimeException("Backend " + backend + " ejected for " + this.ejectMillis + "ms...", t)
+                        .printStackTrace();
+            }
+        });
+        return future;
+    }
+
+    public List<Backend> getBackends() {
+        return this.backends;
+    }
+
+    public IBalanceStrategy getStrategy() {
+        return this.strategy;
+    }
+
+    public int getFailureThreshold() {
+        return this.failureThreshold;
+    }
+
+    public void setFailureThreshold(int failureThreshold) {
+        this.failureThreshold = failureThreshold;
+    }
+
+    public long getEjectMillis() {
+        return this.ejectMillis;
+    }
+
+    public void setEjectMillis(long ejectMillis) {
+        this.ejectMillis = ejectMillis;
+    }
+
+    public long getConnectTimeout() {
+        return this.connectTimeout;
+    }
+
+    public void setConnectTimeout(long connectTimeout) {
+        this.connectTimeout = connectTimeout;
+    }
+
+    /**
+     * 解析 "host:port"
+     *
+     * @param backend backend
+     * @return Backend
+     */
+    private static Backend parse(final String backend) {
+        final int colon = null == backend ? -1 : backend.lastIndexOf(':');
+        if (0 >= colon || backend.length() - 1 == colon) {
+            throw new RuntimeException("Backend must be host:port: " + backend + "...");
+        }
+        final int port;
+        try {
+            port = Integer.parseInt(backend.substring(colon + 1));
+        } catch (NumberFormatException e) {
+            throw new RuntimeException("Backend port must be a number: " + backend + "...", e);
+        }
+        if (1 > port || 0xFFFF < port) {
+            throw new RuntimeException("Backend port out of range: " + backend + "...");
+        }
+        return new Backend(backend.substring(0, colon), port);
+    }
+
+    private static boolean isConnectFailure(Throwable t) {
+        if (t instanceof CompletionException) {
+            t = t.getCause();
+        }
+        return t instanceof ConnectException;
+    }
+}
@@ -1,12 +1,25 @@
 package com.xcoder.utilities.net.napt;
 
 import com.xcoder.utilities.io.Io;
+import com.xcoder.utilities.io.RateLimiter;
 
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.net.InetSocketAddress;
 import java.net.ServerSocket;
 import java.net.Socket;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Network Address Port Translation.
@@ -15,19 +28,66 @@ import java.net.Socket;
  * @date 2019-06-12
  */
 public class Napt {
+
+    /**
+     * s2s/c2c 反方向转发的最大线程数，都在使用时等待已有连接结束
+     */
+    public static final int MAX_REVERSE_THREADS = NaptExecutor.DEFAULT_MAX_TUNNELS;
+
+    private static final long KEEP_ALIVE_SECONDS = 60L;
+
     /**
-     * Port to port
+     * Port to port, 在默认NaptEngine上转发
      *
      * @param port0 port0
      * @param port1 port1
      * @throws IOException IOException
      */
     public static void p2p(int port0, int port1) throws IOException {
+        p2p(port0, port1, NaptEngine.getDefault());
+    }
+
+    /**
+     * Port to port, 两个端口各接受一个连接后配对转发，接受线程不等待转发结束
+     *
+     * @param port0  port0
+     * @param port1  port1
+     * @param engine engine
+     * @throws IOException IOException
+     */
+    public static void p2p(int port0, int port1, NaptEngine engine) throws IOException {
+        ServerSocketChannel serverChannel0 = ServerSocketChannel.open().bind(new InetSocketAddress(port0));
+        ServerSocketChannel serverChannel1 = ServerSocketChannel.open().bind(new InetSocketAddress(port1));
+        for (; ; ) {
+            SocketChannel channel0 = null;
+            SocketChannel channel1 = null;
+            try {
+                channel0 = serverChannel0.accept();
+                channel1 = serverChannel1.accept();
+            } catch (Throwable t) {
+                t.printStackTrace();
+                Io.closeableClose(channel0, channel1);
+                continue;
+            }
+            engine.forward(channel0, channel1);
+        }
+    }
+
+    /**
+     * Port to port, 每个连接的两个方向各一个线程(Java 21+ 为虚拟线程)
+     *
+     * @param port0    port0
+     * @param port1    port1
+     * @param executor executor
+     * @throws IOException          IOException
+     * @throws InterruptedException 等待连接许可时被中断
+     */
+    public static void p2p(int port0, int port1, NaptExecutor executor) throws IOException, InterruptedException {
         ServerSocket serverSocket0 = new ServerSocket(port0);
         ServerSocket serverSocket1 = new ServerSocket(port1);
-        Socket socket0 = null;
-        Socket socket1 = null;
         for (; ; ) {
+            Socket socket0 = null;
+            Socket socket1 = null;
             try {
                 socket0 = serverSocket0.accept();
                 socket1 = serverSocket1.accept();
@@ -36,12 +96,12 @@ public class Napt {
                 Io.closeableClose(socket0, socket1);
                 continue;
             }
-            s2s(socket0, socket1);
+            executor.s2s(socket0, socket1);
         }
     }
 
     /**
-     * Port to host
+     * Port to host, 在默认NaptEngine上转发
      *
      * @param port0 port0
      * @param host1 host1
@@ -49,24 +109,132 @@ public class Napt {
      * @throws IOException IOException
      */
     public static void p2h(int port0, String host1, int port1) throws IOException {
+        p2h(port0, host1, port1, NaptEngine.getDefault());
+    }
+
+    /**
+     * Port to host, 上游连接在事件循环中非阻塞建立，接受线程只负责accept
+     *
+     * @param port0  port0
+     * @param host1  host1
+     * @param port1  port1
+     * @param engine engine
+     * @throws IOException IOException
+     */
+    public static void p2h(int port0, String host1, int port1, NaptEngine engine) throws IOException {
+        ServerSocketChannel serverChannel0 = ServerSocketChannel.open().bind(new InetSocketAddress(port0));
+        for (; ; ) {
+            SocketChannel channel0 = null;
+            try {
+                channel0 = serverChannel0.accept();
+                engine.connect(channel0, new InetSocketAddress(host1, port1));
+            } catch (Throwable t) {
+                t.printStackTrace();
+                Io.closeableClose(channel0);
+            }
+        }
+    }
+
+    /**
+     * Port to host, 客户端与pool中预先连好的上游配对，pool为空时在事件循环中非阻塞连接
+     *
+     * @param port0  port0
+     * @param pool   已start的上游连接池
+     * @param engine engine
+     * @throws IOException IOException
+     */
+    public static void p2h(int port0, UpstreamPool pool, NaptEngine engine) throws IOException {
+        ServerSocketChannel serverChannel0 = ServerSocketChannel.open().bind(new InetSocketAddress(port0));
+        for (; ; ) {
+            SocketChannel channel0 = null;
+            try {
+                channel0 = serverChannel0.accept();
+                final SocketChannel channel1 = pool.poll();
+                if (null == channel1) {
+                    engine.connect(channel0, pool.getAddress());
+                } else {
+                    engine.forward(channel0, channel1);
+                }
+            } catch (Throwable t) {
+                t.printStackTrace();
+                Io.closeableClose(channel0);
+            }
+        }
+    }
+
+    /**
+     * Port to hosts, 每个客户端连接由balancer选择后端，在engine上转发
+     *
+     * @param port0    port0
+     * @param balancer balancer
+     * @param engine   engine
+     * @throws IOException IOException
+     */
+    public static void p2h(int port0, LoadBalancer balancer, NaptEngine engine) throws IOException {
+        ServerSocketChannel serverChannel0 = ServerSocketChannel.open().bind(new InetSocketAddress(port0));
+        for (; ; ) {
+            SocketChannel channel0 = null;
+            try {
+                channel0 = serverChannel0.accept();
+                balancer.forward(channel0, engine);
+            } catch (Throwable t) {
+                t.printStackTrace();
+                Io.closeableClose(channel0);
+            }
+        }
+    }
+
+    /**
+     * Port to host, 上游连接取自pool，每个连接的两个方向各一个线程
+     *
+     * @param port0    port0
+     * @param pool     已start的上游连接池
+     * @param executor executor
+     * @throws IOException          IOException
+     * @throws InterruptedException 等待连接许可时被中断
+     */
+    public static void p2h(int port0, UpstreamPool pool, NaptExecutor executor) throws IOException, InterruptedException {
         ServerSocket serverSocket0 = new ServerSocket(port0);
-        Socket socket0 = null;
-        Socket socket1 = null;
         for (; ; ) {
+            Socket socket0 = null;
             try {
                 socket0 = serverSocket0.accept();
-                socket1 = new Socket(host1, port1);
             } catch (Throwable t) {
                 t.printStackTrace();
-                Io.closeableClose(socket0, socket1);
+                Io.closeableClose(socket0);
                 continue;
             }
-            s2s(socket0, socket1);
+            executor.connect(socket0, pool);
         }
     }
 
     /**
-     * Host to host
+     * Port to host, 每个连接的两个方向各一个线程(Java 21+ 为虚拟线程)，上游在转发线程上连接
+     *
+     * @param port0    port0
+     * @param host1    host1
+     * @param port1    port1
+     * @param executor executor
+     * @throws IOException          IOException
+     * @throws InterruptedException 等待连接许可时被中断
+     */
+    public static void p2h(int port0, String host1, int port1, NaptExecutor executor) throws IOException, InterruptedException {
+        ServerSocket serverSocket0 = new ServerSocket(port0);
+        for (; ; ) {
+            Socket socket0 = null;
+            try {
+                socket0 = serverSocket0.accept();
+            } catch (Throwable t) {
+                t.printStackTrace();
+                Io.closeableClose(socket0);
+                continue;
+            }
+            executor.connect(socket0, host1, port1);
+        }
+    }
+
+    /**
+     * Host to host, 在默认NaptEngine上转发
      *
      * @param host0 host0
      * @param port0 port0
@@ -74,60 +242,168 @@ public class Napt {
      * @param port1 port1
      */
     public static void h2h(String host0, int port0, String host1, int port1) {
-        Socket socket0 = null;
-        Socket socket1 = null;
+        final NaptEngine engine;
+        try {
+            engine = NaptEngine.getDefault();
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        h2h(host0, port0, host1, port1, engine);
+    }
+
+    /**
+     * Host to host, 同一时间只有一对连接，结束后重新连接
+     *
+     * @param host0  host0
+     * @param port0  port0
+     * @param host1  host1
+     * @param port1  port1
+     * @param engine engine
+     */
+    public static void h2h(String host0, int port0, String host1, int port1, NaptEngine engine) {
         for (; ; ) {
+            SocketChannel channel0 = null;
+            SocketChannel channel1 = null;
             try {
-                socket0 = new Socket(host0, port0);
-                socket1 = new Socket(host1, port1);
+                channel0 = SocketChannel.open(new InetSocketAddress(host0, port0));
+                channel1 = SocketChannel.open(new InetSocketAddress(host1, port1));
             } catch (Throwable t) {
                 t.printStackTrace();
-                Io.closeableClose(socket0, socket1);
+                Io.closeableClose(channel0, channel1);
                 continue;
             }
-            s2s(socket0, socket1);
+            try {
+                engine.forward(channel0, channel1).join();
+            } catch (Throwable t) {
+                t.printStackTrace();
+            }
         }
     }
 
+    /**
+     * Socket to socket, 两个方向同时转发，一端EOF后半关闭另一端输出，两个方向都结束后关闭
+     *
+     * @param socket0 socket0
+     * @param socket1 socket1
+     */
     public static void s2s(final Socket socket0, final Socket socket1) {
-        si2so(socket0, socket1);
-        si2so(socket1, socket0);
+        s2s(socket0, socket1, null);
+    }
+
+    /**
+     * Socket to socket, 两个方向共用limiter限速；反方向在共享的有界线程池上转发，
+     * 线程都在使用时等待已有连接结束，等待时被中断则关闭两端并保留中断状态
+     *
+     * @param socket0 socket0
+     * @param socket1 socket1
+     * @param limiter 连接或组的limiter，null 不限速
+     */
+    public static void s2s(final Socket socket0, final Socket socket1, final RateLimiter limiter) {
+        final Future<?> reverse;
         try {
-            socket1.close();
-        } catch (Throwable t) {
-            t.printStackTrace();
+            reverse = Reverse.submit(() -> si2so(socket1, socket0, limiter));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            Io.closeableClose(socket1, socket0);
+            return;
         }
+        si2so(socket0, socket1, limiter);
         try {
-            socket0.close();
-        } catch (Throwable t) {
-            t.printStackTrace();
+            reverse.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            e.printStackTrace();
         }
+        Io.closeableClose(socket1, socket0);
+    }
+
+    /**
+     * Channel to channel, 两个方向共用一块直接缓冲区转发，数据不经过Java堆
+     *
+     * @param channel0 阻塞模式的channel0
+     * @param channel1 阻塞模式的channel1
+     * @return 两个方向的字节数
+     */
+    public static long c2c(final SocketChannel channel0, final SocketChannel channel1) {
+        return ChannelRelay.relay(channel0, channel1);
     }
 
+    /**
+     * Socket input to socket output until EOF, 然后半关闭socket1的输出
+     *
+     * @param socket0 socket0
+     * @param socket1 socket1
+     */
     public static void si2so(final Socket socket0, final Socket socket1) {
-        InputStream is = null;
-        OutputStream os = null;
+        si2so(socket0, socket1, null);
+    }
+
+    /**
+     * Socket input to socket output until EOF, 按limiter限速
+     *
+     * @param socket0 socket0
+     * @param socket1 socket1
+     * @param limiter limiter，null 不限速
+     */
+    public static void si2so(final Socket socket0, final Socket socket1, final RateLimiter limiter) {
         try {
-            is = socket0.getInputStream();
-            os = socket1.getOutputStream();
-            Io.i2o(is, os);
+            final InputStream is = socket0.getInputStream();
+            final OutputStream os = socket1.getOutputStream();
+            Io.i2o(is, os, limiter);
         } catch (Throwable t) {
             t.printStackTrace();
         } finally {
             try {
-                if (null != is) {
-                    is.close();
+                if (!socket1.isClosed() && !socket1.isOutputShutdown()) {
+                    socket1.shutdownOutput();
                 }
             } catch (Throwable t) {
                 t.printStackTrace();
             }
-            try {
-                if (null != os) {
-                    os.close();
+        }
+    }
+
+    /**
+     * s2s/c2c 反方向的线程池，许可保证线程够用，首次使用时创建
+     */
+    static final class Reverse {
+
+        private static final Semaphore PERMITS = new Semaphore(MAX_REVERSE_THREADS);
+
+        private static final ThreadPoolExecutor EXECUTOR;
+
+        static {
+            final AtomicInteger index = new AtomicInteger();
+            EXECUTOR = new ThreadPoolExecutor(MAX_REVERSE_THREADS, MAX_REVERSE_THREADS, KEEP_ALIVE_SECONDS
+                    , TimeUnit.SECONDS, new LinkedBlockingQueue<>(), runnable -> {
+                final Thread thread = new Thread(runnable, "napt-s2s-" + index.getAndIncrement());
+                thread.setDaemon(true);
+                return thread;
+            });
+            EXECUTOR.allowCoreThreadTimeOut(true);
+        }
+
+        /**
+         * 取得许可后在池中执行，结束时归还许可
+         *
+         * @param task task
+         * @return Future
+         * @throws InterruptedException 等待许可时被中断
+         */
+        static <T> Future<T> submit(final Callable<T> task) throws InterruptedException {
+            PERMITS.acquire();
+            return EXECUTOR.submit(() -> {
+                try {
+                    return task.call();
+                } finally {
+                    PERMITS.release();
                 }
-            } catch (Throwable t) {
-                t.printStackTrace();
-            }
+            });
+        }
+
+        static Future<?> submit(final Runnable task) throws InterruptedException {
+            return submit(Executors.callable(task));
         }
     }
 }
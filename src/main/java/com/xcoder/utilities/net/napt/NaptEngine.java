@@ -0,0 +1,540 @@
+package com.xcoder.utilities.net.napt;
+
+import com.xcoder.utilities.io.BufferPool;
+import com.xcoder.utilities.io.Io;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Non-blocking forwarding engine
+ * 每个事件循环一个线程和一个Selector，连接对轮流分配到各循环，两个方向同时转发，共用一块直接缓冲区(各占一半)；
+ * 对端写不完时暂停读源端(背压)，一端EOF且缓冲区写完后半关闭另一端的输出，两个方向都结束后关闭连接
+ * <p>
+ * forward/connect 返回的future完成值为两个方向转发的字节数，连接被重置时异常完成；
+ * connect 连接上游失败或超时时以ConnectException异常完成
+ *
+ * @author chuck lee
+ */
+public class NaptEngine implements Closeable {
+
+    /**
+     * 每个方向的默认缓冲区大小
+     */
+    public static final int DEFAULT_BUFFER_SIZE = 1 << 14;
+
+    /**
+     * 有连接中的上游时检查连接超时的间隔
+     */
+    private static final long CONNECT_CHECK_INTERVAL = 100L;
+
+    private static NaptEngine defaultEngine;
+
+    private final Loop[] loops;
+
+    private final int bufferSize;
+
+    private final AtomicInteger next = new AtomicInteger();
+
+    private volatile boolean closed;
+
+    /**
+     * 每个CPU一个事件循环
+     *
+     * @throws IOException IOException
+     */
+    public NaptEngine() throws IOException {
+        this(Runtime.getRuntime().availableProcessors(), DEFAULT_BUFFER_SIZE);
+    }
+
+    /**
+     * Constructor
+     *
+     * @param loopCount  事件循环数
+     * @param bufferSize 每个方向的缓冲区大小
+     * @throws IOException IOException
+     */
+    public NaptEngine(int loopCount, int bufferSize) throws IOException {
+        if (0 >= loopCount || 0 >= bufferSize) {
+            throw new RuntimeException("Loop count and buffer size must be positive...");
+        }
+        this.bufferSize = bufferSize;
+        this.loops = new Loop[loopCount];
+        try {
+            for (int i = 0; i < loopCount; i++) {
+                this.loops[i] = new Loop(i);
+            }
+        } catch (IOException e) {
+            for (Loop loop : this.loops) {
+                if (null != loop) {
+                    Io.closeableClose(loop.selector);
+                }
+            }
+            throw e;
+        }
+        for (Loop loop : this.loops) {
+            loop.thread.start();
+        }
+    }
+
+    /**
+     * 进程内共享的engine，第一次调用时创建
+     *
+     * @return NaptEngine
+     * @throws IOException IOException
+     */
+    public static synchronized NaptEngine getDefault() throws IOException {
+        if (null == defaultEngine || defaultEngine.closed) {
+            defaultEngine = new NaptEngine();
+        }
+        return defaultEngine;
+    }
+
+    /**
+     * 转发两个已连接的通道
+     *
+     * @param channel0 channel0
+     * @param channel1 channel1
+     * @return 两个方向都结束时完成
+     */
+    public CompletableFuture<Long> forward(SocketChannel channel0, SocketChannel channel1) {
+        final Tunnel tunnel = new Tunnel(channel0, channel1, null, 0L, null);
+        this.submit(tunnel);
+        return tunnel.future;
+    }
+
+    /**
+     * 非阻塞连接address，连上后与channel0互相转发；连接期间不读channel0
+     *
+     * @param channel0 已连接的通道
+     * @param address  上游地址
+     * @return 两个方向都结束时完成，连接失败时异常完成
+     */
+    public CompletableFuture<Long> connect(SocketChannel channel0, SocketAddress address) {
+        return this.connect(channel0, address, 0L);
+    }
+
+    /**
+     * 非阻塞连接address，超时后以ConnectException结束并关闭channel0
+     *
+     * @param channel0       已连接的通道
+     * @param address        上游地址
+     * @param connectTimeout 连接超时毫秒数，&lt;= 0 由系统决定
+     * @return 两个方向都结束时完成，连接失败时异常完成
+     */
+    public CompletableFuture<Long> connect(SocketChannel channel0, SocketAddress address, long connectTimeout) {
+        return this.connect(channel0, address, connectTimeout, null);
+    }
+
+    /**
+     * 非阻塞连接address，连上时在事件循环线程上回调onConnected(需尽快返回)，返回的future要到转发结束才完成
+     *
+     * @param channel0       已连接的通道
+     * @param address        上游地址
+     * @param connectTimeout 连接超时毫秒数，&lt;= 0 由系统决定
+     * @param onConnected    连接成功回调，可以为null
+     * @return 两个方向都结束时完成，连接失败时异常完成
+     */
+    public CompletableFuture<Long> connect(SocketChannel channel0, SocketAddress address, long connectTimeout
+            , Runnable onConnected) {
+        final SocketChannel channel1;
+        try {
+            channel1 = SocketChannel.open();
+        } catch (IOException e) {
+            Io.closeableClose(channel0);
+            final CompletableFuture<Long> future = new CompletableFuture<>();
+            future.completeExceptionally(e);
+            return future;
+        }
+        final Tunnel tunnel = new Tunnel(channel0, channel1, address
+                , 0L < connectTimeout ? System.currentTimeMillis() + connectTimeout : 0L, onConnected);
+        this.submit(tunnel);
+        return tunnel.future;
+    }
+
+    public int getLoopCount() {
+        return this.loops.length;
+    }
+
+    /**
+     * 停止所有事件循环，关闭所有转发中的连接
+     */
+    @Override
+    public void close() {
+        this.closed = true;
+        for (Loop loop : this.loops) {
+            loop.selector.wakeup();
+        }
+    }
+
+    private void submit(final Tunnel tunnel) {
+        if (this.closed) {
+            tunnel.close(new IOException("Napt engine closed..."));
+            return;
+        }
+        final Loop loop = this.loops[(this.next.getAndIncrement() & Integer.MAX_VALUE) % this.loops.length];
+        loop.tasks.add(tunnel);
+        loop.selector.wakeup();
+    }
+
+    private static ConnectException connectFailed(final SocketAddress address, final IOException e) {
+        if (e instanceof ConnectException) {
+            return (ConnectException) e;
+        }
+        final ConnectException connectException = new ConnectException("Connect " + address + " failed: " + e.getMessage());
+        connectException.initCause(e);
+        return connectException;
+    }
+
+    private static ByteBuffer slice(final ByteBuffer buffer, final int offset, final int length) {
+        final ByteBuffer duplicate = buffer.duplicate();
+        duplicate.limit(offset + length).position(offset);
+        return duplicate.slice();
+    }
+
+    /**
+     * 事件循环
+     */
+    private final class Loop implements Runnable {
+
+        private final Selector selector;
+
+        /**
+         * 待注册的连接
+         */
+        private final Queue<Tunnel> tasks = new ConcurrentLinkedQueue<>();
+
+        /**
+         * 有连接超时的连接中的上游，只在循环线程访问
+         */
+        private final List<Tunnel> connecting = new ArrayList<>();
+
+        private final Thread thread;
+
+        private Loop(int index) throws IOException {
+            this.selector = Selector.open();
+            this.thread = new Thread(this, "napt-loop-" + index);
+            this.thread.setDaemon(true);
+        }
+
+        @Override
+        public void run() {
+            try {
+                while (!NaptEngine.this.closed) {
+                    this.selector.select(this.connecting.isEmpty() ? 0L : CONNECT_CHECK_INTERVAL);
+                    for (Tunnel tunnel = this.tasks.poll(); null != tunnel; tunnel = this.tasks.poll()) {
+                        tunnel.register(this);
+                    }
+                    final Iterator<SelectionKey> iterator = this.selector.selectedKeys().iterator();
+                    while (iterator.hasNext()) {
+                        final SelectionKey key = iterator.next();
+                        iterator.remove();
+                        ((Endpoint) key.attachment()).tunnel.handle(key);
+                    }
+                    this.expire();
+                }
+            } catch (Throwable t) {
+                t.printStackTrace();
+            } finally {
+                final IOException closed = new IOException("Napt engine closed...");
+                for (Tunnel tunnel = this.tasks.poll(); null != tunnel; tunnel = this.tasks.poll()) {
+                    tunnel.close(closed);
+                }
+                for (SelectionKey key : this.selector.keys().toArray(new SelectionKey[0])) {
+                    ((Endpoint) key.attachment()).tunnel.close(closed);
+                }
+                Io.closeableClose(this.selector);
+            }
+        }
+
+        /**
+         * 关闭连接超时的上游
+         */
+        private void expire() {
+            if (this.connecting.isEmpty()) {
+                return;
+            }
+            final long now = System.currentTimeMillis();
+            final Iterator<Tunnel> iterator = this.connecting.iterator();
+            while (iterator.hasNext()) {
+                final Tunnel tunnel = iterator.next();
+                if (tunnel.closed || null != tunnel.endpoint0.key) {
+                    iterator.remove();
+                } else if (now >= tunnel.deadline) {
+                    iterator.remove();
+                    tunnel.close(new ConnectException("Connect " + tunnel.address + " timed out..."));
+                }
+            }
+        }
+    }
+
+    /**
+     * 连接的一端
+     */
+    private static final class Endpoint {
+
+        private final Tunnel tunnel;
+
+        private final SocketChannel channel;
+
+        private SelectionKey key;
+
+        /**
+         * 从本端读的方向
+         */
+        private Pipe in;
+
+        /**
+         * 写到本端的方向
+         */
+        private Pipe out;
+
+        private Endpoint(Tunnel tunnel, SocketChannel channel) {
+            this.tunnel = tunnel;
+            this.channel = channel;
+        }
+    }
+
+    /**
+     * 一个方向，buffer 为空时处于读模式，有未写完的数据时pending
+     */
+    private static final class Pipe {
+
+        private final Endpoint src;
+
+        private final Endpoint dst;
+
+        private final ByteBuffer buffer;
+
+        private boolean pending;
+
+        private boolean eof;
+
+        private boolean done;
+
+        private long count;
+
+        private Pipe(Endpoint src, Endpoint dst, ByteBuffer buffer) {
+            this.src = src;
+            this.dst = dst;
+            this.buffer = buffer;
+            src.in = this;
+            dst.out = this;
+        }
+    }
+
+    /**
+     * 一对连接
+     */
+    private final class Tunnel {
+
+        private final Endpoint endpoint0;
+
+        private final Endpoint endpoint1;
+
+        private final Pipe pipe01;
+
+        private final Pipe pipe10;
+
+        /**
+         * 非null时endpoint1需要先连接
+         */
+        private final SocketAddress address;
+
+        /**
+         * 连接截止时间，0 不限
+         */
+        private final long deadline;
+
+        /**
+         * 连接成功回调，可以为null
+         */
+        private final Runnable onConnected;
+
+        private final CompletableFuture<Long> future = new CompletableFuture<>();
+
+        /**
+         * 两个方向共用的直接缓冲区
+         */
+        private final ByteBuffer buffer;
+
+        private boolean closed;
+
+        private Tunnel(SocketChannel channel0, SocketChannel channel1, SocketAddress address, long deadline
+                , Runnable onConnected) {
+            final int size = NaptEngine.this.bufferSize;
+            this.buffer = BufferPool.acquireDirect(size << 1);
+            this.endpoint0 = new Endpoint(this, channel0);
+            this.endpoint1 = new Endpoint(this, channel1);
+            this.pipe01 = new Pipe(this.endpoint0, this.endpoint1, slice(this.buffer, 0, size));
+            this.pipe10 = new Pipe(this.endpoint1, this.endpoint0, slice(this.buffer, size, size));
+            this.address = address;
+            this.deadline = deadline;
+            this.onConnected = onConnected;
+        }
+
+        private void register(final Loop loop) {
+            final Selector selector = loop.selector;
+            try {
+                this.endpoint0.channel.configureBlocking(false);
+                this.endpoint1.channel.configureBlocking(false);
+                if (null == this.address) {
+                    this.endpoint0.key = this.endpoint0.channel.register(selector, 0, this.endpoint0);
+                    this.endpoint1.key = this.endpoint1.channel.register(selector, 0, this.endpoint1);
+                    this.update();
+                    return;
+                }
+                if (this.endpoint1.channel.connect(this.address)) {
+                    this.connected(selector);
+                } else {
+                    this.endpoint1.key = this.endpoint1.channel.register(selector, SelectionKey.OP_CONNECT, this.endpoint1);
+                    if (0L != this.deadline) {
+                        loop.connecting.add(this);
+                    }
+                }
+            } catch (IOException e) {
+                this.close(null == this.address ? e : connectFailed(this.address, e));
+            } catch (Throwable t) {
+                this.close(t);
+            }
+        }
+
+        private void handle(final SelectionKey key) {
+            final Endpoint endpoint = (Endpoint) key.attachment();
+            try {
+                final int ready = key.readyOps();
+                if (0 != (ready & SelectionKey.OP_CONNECT)) {
+                    final boolean connected;
+                    try {
+                        connected = endpoint.channel.finishConnect();
+                    } catch (IOException e) {
+                        this.close(connectFailed(this.address, e));
+                        return;
+                    }
+                    if (connected) {
+                        this.connected(key.selector());
+                    }
+                    return;
+                }
+                if (0 != (ready & SelectionKey.OP_READ)) {
+                    this.read(endpoint.in);
+                }
+                if (!this.closed && 0 != (ready & SelectionKey.OP_WRITE)) {
+                    this.flush(endpoint.out);
+                }
+                if (!this.closed) {
+                    this.update();
+                }
+            } catch (Throwable t) {
+                this.close(t);
+            }
+        }
+
+        private void connected(final Selector selector) throws IOException {
+            if (null == this.endpoint1.key) {
+                this.endpoint1.key = this.endpoint1.channel.register(selector, 0, this.endpoint1);
+            }
+            this.endpoint0.key = this.endpoint0.channel.register(selector, 0, this.endpoint0);
+            this.update();
+            if (null != this.onConnected) {
+                try {
+                    this.onConnected.run();
+                } catch (Throwable t) {
+                    t.printStackTrace();
+                }
+            }
+        }
+
+        private void read(final Pipe pipe) throws IOException {
+            final int n = pipe.src.channel.read(pipe.buffer);
+            if (-1 == n) {
+                pipe.eof = true;
+                this.finish(pipe);
+            } else if (0 < n) {
+                pipe.buffer.flip();
+                this.flush(pipe);
+            }
+        }
+
+        private void flush(final Pipe pipe) throws IOException {
+            pipe.count += pipe.dst.channel.write(pipe.buffer);
+            pipe.pending = pipe.buffer.hasRemaining();
+            if (!pipe.pending) {
+                pipe.buffer.clear();
+                if (pipe.eof) {
+                    this.finish(pipe);
+                }
+            }
+        }
+
+        /**
+         * 源端EOF且缓冲区已写完，半关闭目标端输出
+         *
+         * @param pipe pipe
+         * @throws IOException IOException
+         */
+        private void finish(final Pipe pipe) throws IOException {
+            pipe.done = true;
+            if (this.pipe01.done && this.pipe10.done) {
+                this.close(null);
+                return;
+            }
+            pipe.dst.channel.shutdownOutput();
+        }
+
+        private void update() {
+            this.interest(this.endpoint0);
+            this.interest(this.endpoint1);
+        }
+
+        private void interest(final Endpoint endpoint) {
+            int ops = 0;
+            if (!endpoint.in.eof && !endpoint.in.pending) {
+                ops |= SelectionKey.OP_READ;
+            }
+            if (endpoint.out.pending) {
+                ops |= SelectionKey.OP_WRITE;
+            }
+            if (ops != endpoint.key.interestOps()) {
+                endpoint.key.interestOps(ops);
+            }
+        }
+
+        /**
+         * 只调用一次，取消注册、关闭两端、归还缓冲区
+         *
+         * @param t 失败原因，null 正常结束
+         */
+        private void close(final Throwable t) {
+            if (this.closed) {
+                return;
+            }
+            this.closed = true;
+            for (Endpoint endpoint : new Endpoint[]{this.endpoint0, this.endpoint1}) {
+                if (null != endpoint.key) {
+                    endpoint.key.cancel();
+                }
+            }
+            Io.closeableClose(this.endpoint0.channel, this.endpoint1.channel);
+            BufferPool.release(this.buffer);
+            if (null == t) {
+                this.future.complete(this.pipe01.count + this.pipe10.count);
+            } else {
+                this.future.completeExceptionally(t);
+            }
+        }
+    }
+}
@@ -0,0 +1,216 @@
+package com.xcoder.utilities.net.napt;
+
+import com.xcoder.utilities.io.Io;
+
+import java.io.Closeable;
+import java.net.Socket;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Thread-per-direction tunnel executor
+ * 每个连接的两个方向各占一个线程，沿用阻塞的 Napt.si2so / Io.i2o；
+ * 运行在Java 21+时用虚拟线程(反射调用 Executors.newVirtualThreadPerTaskExecutor)，连接数不受线程数限制；
+ * 更早的JDK退化为有界的平台线程池，超过maxTunnels时接受线程等待已有连接结束
+ *
+ * @author chuck lee
+ */
+public class NaptExecutor implements Closeable {
+
+    /**
+     * 平台线程池默认最大连接数
+     */
+    public static final int DEFAULT_MAX_TUNNELS = 256;
+
+    private static final long KEEP_ALIVE_SECONDS = 60L;
+
+    private final ExecutorService executor;
+
+    /**
+     * 平台线程池的连接许可，虚拟线程为null
+     */
+    private final Semaphore tunnels;
+
+    public NaptExecutor() {
+        this(DEFAULT_MAX_TUNNELS);
+    }
+
+    /**
+     * Constructor
+     *
+     * @param maxTunnels 没有虚拟线程时的最大并发连接数，线程数为其2倍
+     */
+    public NaptExecutor(int maxTunnels) {
+        this(virtualExecutor(), maxTunnels);
+    }
+
+    private NaptExecutor(ExecutorService virtual, int maxTunnels) {
+        if (null != virtual) {
+            this.executor = virtual;
+            this.tunnels = null;
+            return;
+        }
+        if (0 >= maxTunnels) {
+            throw new RuntimeException("Max tunnels must be positive...");
+        }
+        final AtomicInteger index = new AtomicInteger();
+        // 许可保证线程够用，队列只在线程归还前的瞬间短暂排队
+        final ThreadPoolExecutor executor = new ThreadPoolExecutor(maxTunnels << 1, maxTunnels << 1
+                , KEEP_ALIVE_SECONDS, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), runnable -> {
+            final Thread thread = new Thread(runnable, "napt-" + index.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.allowCoreThreadTimeOut(true);
+        this.executor = executor;
+        this.tunnels = new Semaphore(maxTunnels);
+    }
+
+    /**
+     * 平台线程池版本，用于对比或在Java 21+上仍需限制并发
+     *
+     * @param maxTunnels 最大并发连接数
+     * @return NaptExecutor
+     */
+    public static NaptExecutor platform(int maxTunnels) {
+        return new NaptExecutor(null, maxTunnels);
+    }
+
+    /**
+     * 当前JDK是否支持虚拟线程
+     *
+     * @return Java 21+ 返回true
+     */
+    public static boolean isVirtualAvailable() {
+        final ExecutorService executor = virtualExecutor();
+        if (null == executor) {
+            return false;
+        }
+        executor.shutdown();
+        return true;
+    }
+
+    public boolean isVirtual() {
+        return null == this.tunnels;
+    }
+
+    /**
+     * 两个方向各在一个线程上转发，都结束后关闭两端；不等待转发结束
+     *
+     * @param socket0 socket0
+     * @param socket1 socket1
+     * @throws InterruptedException 等待许可时被中断
+     */
+    public void s2s(final Socket socket0, final Socket socket1) throws InterruptedException {
+        try {
+            this.tunnel(socket0, () -> socket1);
+        } catch (RejectedExecutionException e) {
+            Io.closeableClose(socket1);
+            throw e;
+        }
+    }
+
+    /**
+     * 在转发线程上连接host:port，连上后与socket0互相转发；接受线程不等待连接
+     *
+     * @param socket0 socket0
+     * @param host    host
+     * @param port    port
+     * @throws InterruptedException 等待许可时被中断
+     */
+    public void connect(final Socket socket0, final String host, final int port) throws InterruptedException {
+        this.tunnel(socket0, () -> new Socket(host, port));
+    }
+
+    /**
+     * 在转发线程上从pool取上游连接(没有空闲连接时当场连接)，与socket0互相转发
+     *
+     * @param socket0 socket0
+     * @param pool    pool
+     * @throws InterruptedException 等待许可时被中断
+     */
+    public void connect(final Socket socket0, final UpstreamPool pool) throws InterruptedException {
+        this.tunnel(socket0, () -> pool.borrow().socket());
+    }
+
+    /**
+     * 不再接受新连接，已有连接继续到结束
+     */
+    @Override
+    public void close() {
+        this.executor.shutdown();
+    }
+
+    private void tunnel(final Socket socket0, final Callable<Socket> upstream) throws InterruptedException {
+        if (null != this.tunnels) {
+            this.tunnels.acquire();
+        }
+        try {
+            this.executor.execute(() -> this.run(socket0, upstream));
+        } catch (RejectedExecutionException e) {
+            Io.closeableClose(socket0);
+            this.release();
+            throw e;
+        }
+    }
+
+    private void run(final Socket socket0, final Callable<Socket> upstream) {
+        final Socket socket1;
+        try {
+            socket1 = upstream.call();
+        } catch (Throwable t) {
+            t.printStackTrace();
+            Io.closeableClose(socket0);
+            this.release();
+            return;
+        }
+        // 最后结束的方向关闭两端
+        final AtomicInteger remaining = new AtomicInteger(2);
+        final Runnable done = () -> {
+            if (0 == remaining.decrementAndGet()) {
+                Io.closeableClose(socket1, socket0);
+                this.release();
+            }
+        };
+        try {
+            this.executor.execute(() -> {
+                try {
+                    Napt.si2so(socket1, socket0);
+                } finally {
+                    done.run();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // 已close，另一个方向也不再转发；两个方向都没有运行，直接关闭并归还许可
+            Io.closeableClose(socket1, socket0);
+            this.release();
+            return;
+        }
+        try {
+            Napt.si2so(socket0, socket1);
+        } finally {
+            done.run();
+        }
+    }
+
+    private void release() {
+        if (null != this.tunnels) {
+            this.tunnels.release();
+        }
+    }
+
+    private static ExecutorService virtualExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (Exception e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,29 @@
+package com.xcoder.utilities.net.napt;
+
+import java.net.InetSocketAddress;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 轮询，跳过被摘除的后端
+ *
+ * @author chuck lee
+ */
+public class RoundRobinStrategy implements IBalanceStrategy {
+
+    private final AtomicInteger next = new AtomicInteger();
+
+    @Override
+    public Backend select(List<Backend> backends, InetSocketAddress client, boolean available) {
+        final int size = backends.size();
+        final int start = this.next.getAndIncrement() & Integer.MAX_VALUE;
+        final long now = System.currentTimeMillis();
+        for (int i = 0; i < size; i++) {
+            final Backend backend = backends.get((start + i) % size);
+            if (!available || backend.isAvailable(now)) {
+                return backend;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,308 @@
+package com.xcoder.utilities.net.napt;
+
+import com.xcoder.utilities.io.Io;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Upstream connection pool
+ * 后台线程预先连接上游，保持warm个空闲连接，接受的客户端直接配对一个已连接的通道，省去TCP握手；
+ * 隧道转发的是原始字节，TLS握手仍在客户端与上游之间进行，除非上游连接由本端做TLS终结，否则省不掉；
+ * 连接配对后不再归还(隧道结束即关闭)，取走后立即补充
+ * <p>
+ * 空闲超过maxIdleMillis的连接被关闭替换，避免上游的空闲超时；
+ * 健康检查：空闲连接可读即视为不可用(上游已关闭、重置或主动发送了数据)，取出前和每轮维护时检查，
+ * 所以不适用于连接后服务端先发数据的协议(如SMTP、MySQL)
+ *
+ * @author chuck lee
+ */
+public class UpstreamPool implements Closeable {
+
+    /**
+     * 默认预连接数
+     */
+    public static final int DEFAULT_WARM = 8;
+
+    /**
+     * 默认最长空闲时间
+     */
+    public static final long DEFAULT_MAX_IDLE_MILLIS = 30000L;
+
+    /**
+     * 默认连接超时
+     */
+    public static final int DEFAULT_CONNECT_TIMEOUT = 3000;
+
+    /**
+     * 维护间隔
+     */
+    private static final long CHECK_INTERVAL = 1000L;
+
+    private final InetSocketAddress address;
+
+    private final int warm;
+
+    private final long maxIdleMillis;
+
+    private int connectTimeout = DEFAULT_CONNECT_TIMEOUT;
+
+    /**
+     * 尾部最新，取最新的，从头部淘汰最旧的
+     */
+    private final ConcurrentLinkedDeque<Idle> idles = new ConcurrentLinkedDeque<>();
+
+    private final AtomicInteger idleCount = new AtomicInteger();
+
+    private final LongAdder hitCount = new LongAdder();
+
+    private final LongAdder missCount = new LongAdder();
+
+    private final LongAdder evictionCount = new LongAdder();
+
+    private final Object signal = new Object();
+
+    private volatile boolean closed;
+
+    private Thread thread;
+
+    public UpstreamPool(String host, int port) {
+        this(host, port, DEFAULT_WARM, DEFAULT_MAX_IDLE_MILLIS);
+    }
+
+    /**
+     * Constructor
+     *
+     * @param host          上游host
+     * @param port          上游port
+     * @param warm          保持的空闲连接数
+     * @param maxIdleMillis 空闲连接最长保留时间
+     */
+    public UpstreamPool(String host, int port, int warm, long maxIdleMillis) {
+        if (0 > warm || 0L >= maxIdleMillis) {
+            throw new RuntimeException("Warm must not be negative and max idle must be positive...");
+        }
+        this.address = new InetSocketAddress(host, port);
+        this.warm = warm;
+        this.maxIdleMillis = maxIdleMillis;
+    }
+
+    /**
+     * 启动后台预连接线程
+     *
+     * @return this
+     */
+    public synchronized UpstreamPool start() {
+        if (null == this.thread) {
+            this.thread = new Thread(this::maintain, "upstream-pool-" + this.address.getPort());
+            this.thread.setDaemon(true);
+            this.thread.start();
+        }
+        return this;
+    }
+
+    /**
+     * 取一个健康的空闲连接，不阻塞
+     *
+     * @return 阻塞模式的通道，没有时返回null
+     */
+    public SocketChannel poll() {
+        for (Idle idle = this.idles.pollLast(); null != idle; idle = this.idles.pollLast()) {
+            this.idleCount.decrementAndGet();
+            if (this.usable(idle, System.currentTimeMillis())) {
+                this.hitCount.increment();
+                this.refill();
+                return idle.channel;
+            }
+            this.evict(idle);
+        }
+        this.missCount.increment();
+        this.refill();
+        return null;
+    }
+
+    /**
+     * 取一个连接，没有空闲连接时当前线程连接
+     *
+     * @return 阻塞模式的通道
+     * @throws IOException 连接失败
+     */
+    public SocketChannel borrow() throws IOException {
+        final SocketChannel channel = this.poll();
+        return null == channel ? this.connect() : channel;
+    }
+
+    public InetSocketAddress getAddress() {
+        return this.address;
+    }
+
+    public int getIdleCount() {
+        return this.idleCount.get();
+    }
+
+    public long getHitCount() {
+        return this.hitCount.sum();
+    }
+
+    public long getMissCount() {
+        return this.missCount.sum();
+    }
+
+    public long getEvictionCount() {
+        return this.evictionCount.sum();
+    }
+
+    public int getConnectTimeout() {
+        return this.connectTimeout;
+    }
+
+    public void setConnectTimeout(int connectTimeout) {
+        this.connectTimeout = connectTimeout;
+    }
+
+    /**
+     * 停止预连接，关闭所有空闲连接；已取走的连接不受影响
+     */
+    @Override
+    public void close() {
+        this.closed = true;
+        synchronized (this.signal) {
+            this.signal.notifyAll();
+        }
+        for (Idle idle = this.idles.pollFirst(); null != idle; idle = this.idles.pollFirst()) {
+            this.idleCount.decrementAndGet();
+            Io.closeableClose(idle.channel);
+        }
+    }
+
+    /**
+     * 后台线程：检查空闲连接，补足到warm个
+     */
+    private void maintain() {
+        // 上游不可用期间只打印一次
+        boolean down = false;
+        while (!this.closed) {
+            try {
+                this.check();
+                while (!this.closed && this.warm > this.idleCount.get()) {
+                    final SocketChannel channel = this.connect();
+                    this.idles.offerLast(new Idle(channel, System.currentTimeMillis()));
+                    this.idleCount.incrementAndGet();
+                }
+                if (this.closed) {
+                    // 连接期间被close
+                    this.close();
+                }
+                down = false;
+            } catch (Throwable t) {
+                // 上游不可用，下一轮再试
+                if (!down) {
+                    t.printStackTrace();
+                    down = true;
+                }
+            }
+            if (this.closed) {
+                break;
+            }
+            synchronized (this.signal) {
+                try {
+                    this.signal.wait(CHECK_INTERVAL);
+                } catch (InterruptedException e) {
+                    break;
+                }
+            }
+        }
+        this.close();
+    }
+
+    /**
+     * 淘汰超时和不健康的空闲连接；先从队列中取出再检查，避免检查时被poll取走
+     * 按快照从旧到新逐个检查后放回队尾，一轮之后保留的连接仍是原来的先后顺序
+     */
+    private void check() {
+        final long now = System.currentTimeMillis();
+        for (Idle idle : this.idles.toArray(new Idle[0])) {
+            if (!this.idles.removeFirstOccurrence(idle)) {
+                continue;
+            }
+            if (this.usable(idle, now)) {
+                this.idles.offerLast(idle);
+            } else {
+                this.idleCount.decrementAndGet();
+                this.evict(idle);
+            }
+        }
+    }
+
+    private boolean usable(final Idle idle, final long now) {
+        return now - idle.since < this.maxIdleMillis && quiet(idle.channel);
+    }
+
+    private void evict(final Idle idle) {
+        this.evictionCount.increment();
+        Io.closeableClose(idle.channel);
+    }
+
+    private void refill() {
+        synchronized (this.signal) {
+            this.signal.notifyAll();
+        }
+    }
+
+    private SocketChannel connect() throws IOException {
+        final SocketChannel channel = SocketChannel.open();
+        try {
+            channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+            channel.setOption(StandardSocketOptions.SO_KEEPALIVE, true);
+            channel.socket().connect(this.address, this.connectTimeout);
+            return channel;
+        } catch (IOException e) {
+            Io.closeableClose(channel);
+            throw e;
+        }
+    }
+
+    /**
+     * 空闲连接应当没有可读的东西；非阻塞读一次，读到EOF、数据或异常都视为不可用
+     *
+     * @param channel channel
+     * @return 健康返回true
+     */
+    private static boolean quiet(final SocketChannel channel) {
+        if (!channel.isOpen()) {
+            return false;
+        }
+        try {
+            channel.configureBlocking(false);
+            try {
+                return 0 == channel.read(ByteBuffer.allocate(1));
+            } finally {
+                channel.configureBlocking(true);
+            }
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * 空闲连接
+     */
+    private static final class Idle {
+
+        private final SocketChannel channel;
+
+        private final long since;
+
+        private Idle(SocketChannel channel, long since) {
+            this.channel = channel;
+            this.since = since;
+        }
+    }
+}
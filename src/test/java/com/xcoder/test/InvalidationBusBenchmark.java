@@ -0,0 +1,86 @@
+package com.xcoder.test;
+
+import com.xcoder.utilities.common.MapCache;
+import com.xcoder.utilities.common.MapCacheInvalidationBus;
+import com.xcoder.utilities.common.MapCacheSnapshot;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Loopback two-node invalidation bus benchmark
+ * A、B两个节点互为peer，A另配一个不可达的peer(连接等到超时)；测A写入后B的失效延迟与吞吐，
+ * 不可达peer有独立的发送线程和退避，不拖慢B
+ */
+public class InvalidationBusBenchmark {
+
+    /**
+     * 小于发送缓冲的合并上限，不触发CLEAR
+     */
+    private static final int KEYS = 50000;
+
+    private static final long EXPIRE = 600000L;
+
+    /**
+     * 不可路由地址，连接会等到超时
+     */
+    private static final String DEAD_PEER = "10.255.255.1:9";
+
+    public static void main(String[] args) throws Exception {
+        final int portA = freePort();
+        final int portB = freePort();
+        final MapCache<String, String> cacheA = new MapCache<>(null);
+        final MapCache<String, String> cacheB = new MapCache<>(null);
+        try (MapCacheInvalidationBus<String, String> busA = new MapCacheInvalidationBus<>(cacheA, portA
+                , Arrays.asList(DEAD_PEER, "127.0.0.1:" + portB), MapCacheSnapshot.STRING_CODEC, null);
+             MapCacheInvalidationBus<String, String> busB = new MapCacheInvalidationBus<>(cacheB, portB
+                     , Arrays.asList("127.0.0.1:" + portA), MapCacheSnapshot.STRING_CODEC, null)) {
+            busA.start();
+            busB.start();
+
+            // 单个失效的延迟：A的put使B的同一key失效
+            cacheB.put("latency", "v", EXPIRE);
+            final long start = System.nanoTime();
+            cacheA.put("latency", "v", EXPIRE);
+            awaitAbsent(cacheB, "latency");
+            System.out.println("latency: " + TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start) + " us");
+
+            // 批量失效吞吐，B的put同样广播到A，A此时为空
+            for (int i = 0; i < KEYS; i++) {
+                cacheB.put(String.valueOf(i), "v", EXPIRE);
+            }
+            final long begin = System.nanoTime();
+            for (int i = 0; i < KEYS; i++) {
+                cacheA.put(String.valueOf(i), "v", EXPIRE);
+            }
+            final long deadline = System.currentTimeMillis() + 10000L;
+            while (0 < cacheB.mappingCount()) {
+                if (System.currentTimeMillis() > deadline) {
+                    throw new IllegalStateException(cacheB.mappingCount() + " invalidations not received...");
+                }
+                Thread.sleep(1L);
+            }
+            final long nanos = System.nanoTime() - begin;
+            System.out.println("throughput: " + KEYS * TimeUnit.SECONDS.toNanos(1) / nanos + " invalidations/s");
+        }
+        System.exit(0);
+    }
+
+    private static void awaitAbsent(final MapCache<String, String> cache, final String key) throws InterruptedException {
+        final long deadline = System.currentTimeMillis() + 10000L;
+        while (null != cache.getValue(key)) {
+            if (System.currentTimeMillis() > deadline) {
+                throw new IllegalStateException("Invalidation of " + key + " not received...");
+            }
+            Thread.sleep(1L);
+        }
+    }
+
+    private static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package com.xcoder.test;
+
+import com.xcoder.utilities.common.MapCache;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * MapCache put contention benchmark
+ * 1..cores 个写线程并发put，输出每秒put数
+ */
+public class MapCacheBenchmark {
+
+    private static final long DURATION = 2000L;
+
+    private static final int KEYS = 1 << 16;
+
+    public static void main(String[] args) throws InterruptedException {
+        final int cores = Runtime.getRuntime().availableProcessors();
+        for (int threads = 1; threads <= cores; threads <<= 1) {
+            run(threads);
+        }
+        if (Integer.bitCount(cores) != 1) {
+            run(cores);
+        }
+    }
+
+    private static void run(final int threads) throws InterruptedException {
+        final MapCache<String, String> cache = new MapCache<>(null);
+        final Thread cleaner = new Thread(cache, "map-cache-cleaner");
+        cleaner.setDaemon(true);
+        cleaner.start();
+
+        final String[] keys = new String[KEYS];
+        for (int i = 0; i < KEYS; i++) {
+            keys[i] = String.valueOf(i);
+        }
+        final LongAdder puts = new LongAdder();
+        final CountDownLatch start = new CountDownLatch(1);
+        final CountDownLatch done = new CountDownLatch(threads);
+        final long deadline = System.currentTimeMillis() + DURATION;
+        for (int t = 0; t < threads; t++) {
+            final int seed = t;
+            new Thread(() -> {
+                try {
+                    start.await();
+                    long count = 0;
+                    for (int i = seed; System.currentTimeMillis() < deadline; i += 7) {
+                        final String key = keys[i & (KEYS - 1)];
+                        cache.put(key, "v", 60000L);
+                        count++;
+                    }
+                    puts.add(count);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    done.countDown();
+                }
+            }).start();
+        }
+        start.countDown();
+        done.await();
+        cleaner.interrupt();
+        final long perSecond = puts.sum() * TimeUnit.SECONDS.toMillis(1) / DURATION;
+        System.out.println(threads + " threads: " + perSecond + " puts/s");
+    }
+}
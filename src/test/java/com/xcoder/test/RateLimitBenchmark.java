@@ -0,0 +1,115 @@
+package com.xcoder.test;
+
+import com.xcoder.utilities.io.RateLimiter;
+import com.xcoder.utilities.net.napt.Napt;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Loopback rate limited relay benchmark
+ * client -&gt; Napt.s2s(limiter) -&gt; sink，按配置速率传输SECONDS秒的数据，实测速率偏离超过TOLERANCE时失败；
+ * group 为两个连接各自不限速、共用一个组limiter，检查合计速率
+ */
+public class RateLimitBenchmark {
+
+    private static final long[] RATES = {1L << 20, 8L << 20, 32L << 20};
+
+    private static final long SECONDS = 3L;
+
+    private static final double TOLERANCE = 0.1D;
+
+    public static void main(String[] args) throws Exception {
+        final InetAddress loopback = InetAddress.getByName("127.0.0.1");
+        for (long rate : RATES) {
+            // burst 取速率的1/8，计算期望时间时扣除初始令牌
+            final long burst = rate >> 3;
+            final long bytes = rate * SECONDS;
+            final long nanos = run(loopback, bytes, new RateLimiter(rate, burst, null));
+            check("single", rate, bytes - burst, nanos);
+        }
+        final long rate = 8L << 20;
+        final long burst = rate >> 3;
+        final RateLimiter group = new RateLimiter(rate, burst, null);
+        final long bytes = rate * SECONDS / 2;
+        final long start = System.nanoTime();
+        final CompletableFuture<Long> first = CompletableFuture.supplyAsync(() -> runQuietly(loopback, bytes, new RateLimiter(0L, group)));
+        final CompletableFuture<Long> second = CompletableFuture.supplyAsync(() -> runQuietly(loopback, bytes, new RateLimiter(0L, group)));
+        first.join();
+        second.join();
+        check("group", rate, (bytes << 1) - burst, System.nanoTime() - start);
+    }
+
+    private static void check(final String mode, final long rate, final long limitedBytes, final long nanos) {
+        final double measured = (double) limitedBytes * TimeUnit.SECONDS.toNanos(1) / nanos;
+        final double deviation = (measured - rate) / rate;
+        System.out.println(mode + ": configured " + (rate >> 10) + " KB/s, measured " + (long) measured / 1024
+                + " KB/s (" + String.format("%+.1f", deviation * 100) + "%)");
+        if (TOLERANCE < Math.abs(deviation)) {
+            throw new IllegalStateException(mode + " rate deviates more than " + (int) (TOLERANCE * 100) + "%...");
+        }
+    }
+
+    private static long runQuietly(final InetAddress loopback, final long bytes, final RateLimiter limiter) {
+        try {
+            return run(loopback, bytes, limiter);
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static long run(final InetAddress loopback, final long bytes, final RateLimiter limiter) throws Exception {
+        try (ServerSocketChannel sink = ServerSocketChannel.open().bind(new InetSocketAddress(loopback, 0));
+             ServerSocket server = new ServerSocket(0, 1, loopback)) {
+            final InetSocketAddress sinkAddress = (InetSocketAddress) sink.getLocalAddress();
+            final CompletableFuture<Long> received = CompletableFuture.supplyAsync(() -> drain(sink));
+            final Thread relay = new Thread(() -> {
+                try {
+                    Napt.s2s(server.accept(), new Socket(loopback, sinkAddress.getPort()), limiter);
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            });
+            relay.start();
+            final long start = System.nanoTime();
+            try (SocketChannel client = SocketChannel.open(new InetSocketAddress(loopback, server.getLocalPort()))) {
+                final ByteBuffer buffer = ByteBuffer.allocateDirect(1 << 16);
+                for (long sent = 0L; sent < bytes; ) {
+                    buffer.clear().limit((int) Math.min(buffer.capacity(), bytes - sent));
+                    while (buffer.hasRemaining()) {
+                        sent += client.write(buffer);
+                    }
+                }
+                client.shutdownOutput();
+                if (bytes != received.get()) {
+                    throw new IllegalStateException("Rate limited relay lost data...");
+                }
+            }
+            final long nanos = System.nanoTime() - start;
+            relay.join();
+            return nanos;
+        }
+    }
+
+    private static long drain(final ServerSocketChannel sink) {
+        try (SocketChannel channel = sink.accept()) {
+            final ByteBuffer buffer = ByteBuffer.allocateDirect(1 << 16);
+            long count = 0L;
+            for (int n = channel.read(buffer); -1 != n; n = channel.read(buffer)) {
+                count += n;
+                buffer.clear();
+            }
+            return count;
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
@@ -0,0 +1,107 @@
+package com.xcoder.test;
+
+import com.xcoder.utilities.net.napt.Napt;
+import com.xcoder.utilities.net.napt.NaptEngine;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Loopback relay throughput benchmark
+ * client -&gt; relay -&gt; sink，比较 Napt.s2s(流)、Napt.c2c(直接缓冲区)、NaptEngine 的MB/s
+ */
+public class RelayBenchmark {
+
+    private static final long BYTES = 1L << 30;
+
+    private static final int ROUNDS = 3;
+
+    public static void main(String[] args) throws Exception {
+        final long bytes = 0 < args.length ? Long.parseLong(args[0]) << 20 : BYTES;
+        final NaptEngine engine = new NaptEngine(1, NaptEngine.DEFAULT_BUFFER_SIZE << 2);
+        for (String mode : new String[]{"stream", "channel", "engine"}) {
+            // 预热
+            run(mode, bytes >> 3, engine);
+            for (int i = 0; i < ROUNDS; i++) {
+                final long nanos = run(mode, bytes, engine);
+                System.out.println(mode + ": " + (bytes >> 20) * TimeUnit.SECONDS.toNanos(1) / nanos + " MB/s");
+            }
+        }
+        engine.close();
+    }
+
+    private static long run(final String mode, final long bytes, final NaptEngine engine) throws Exception {
+        try (ServerSocketChannel sink = ServerSocketChannel.open().bind(new InetSocketAddress("127.0.0.1", 0))) {
+            final InetSocketAddress sinkAddress = (InetSocketAddress) sink.getLocalAddress();
+            final CompletableFuture<Long> received = CompletableFuture.supplyAsync(() -> drain(sink));
+            final int port;
+            final Thread relay;
+            if ("stream".equals(mode)) {
+                final ServerSocket server = new ServerSocket(0, 1, sinkAddress.getAddress());
+                port = server.getLocalPort();
+                relay = new Thread(() -> {
+                    try (ServerSocket listener = server) {
+                        Napt.s2s(listener.accept(), new Socket(sinkAddress.getAddress(), sinkAddress.getPort()));
+                    } catch (IOException e) {
+                        e.printStackTrace();
+                    }
+                });
+            } else {
+                final ServerSocketChannel server = ServerSocketChannel.open().bind(new InetSocketAddress(sinkAddress.getAddress(), 0));
+                port = ((InetSocketAddress) server.getLocalAddress()).getPort();
+                relay = new Thread(() -> {
+                    try (ServerSocketChannel listener = server) {
+                        final SocketChannel channel0 = listener.accept();
+                        final SocketChannel channel1 = SocketChannel.open(sinkAddress);
+                        if ("channel".equals(mode)) {
+                            Napt.c2c(channel0, channel1);
+                        } else {
+                            engine.forward(channel0, channel1).join();
+                        }
+                    } catch (IOException e) {
+                        e.printStackTrace();
+                    }
+                });
+            }
+            relay.start();
+            final long start = System.nanoTime();
+            try (SocketChannel client = SocketChannel.open(new InetSocketAddress(sinkAddress.getAddress(), port))) {
+                final ByteBuffer buffer = ByteBuffer.allocateDirect(1 << 16);
+                for (long sent = 0L; sent < bytes; ) {
+                    buffer.clear().limit((int) Math.min(buffer.capacity(), bytes - sent));
+                    while (buffer.hasRemaining()) {
+                        sent += client.write(buffer);
+                    }
+                }
+                client.shutdownOutput();
+                if (bytes != received.get()) {
+                    throw new IllegalStateException(mode + " lost data...");
+                }
+            }
+            final long nanos = System.nanoTime() - start;
+            relay.join();
+            return nanos;
+        }
+    }
+
+    private static long drain(final ServerSocketChannel sink) {
+        try (SocketChannel channel = sink.accept()) {
+            final ByteBuffer buffer = ByteBuffer.allocateDirect(1 << 16);
+            long count = 0L;
+            for (int n = channel.read(buffer); -1 != n; n = channel.read(buffer)) {
+                count += n;
+                buffer.clear();
+            }
+            return count;
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+}